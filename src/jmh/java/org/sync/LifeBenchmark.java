@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of construction and execution of all Life engines
+ *
+ * Build and run with:
+ *     mvn -P jmh package -DskipTests
+ *     java -jar target/benchmarks.jar [-p type=NOSYNC,BITWISE] [-p threads=8]
+ *
+ * VECTOR only uses the Vector API with -jvmArgsAppend "--add-modules jdk.incubator.vector",
+ * compare it with -p type=ORDINARY,VECTOR on the same sizes and thread counts.
+ *
+ * The execute benchmark reports cellUpdates, the rate of cell updates per second.
+ *
+ * HASHLIFE is left out: it jumps over generations by memoized blocks instead
+ * of updating every cell of every generation, so neither its time per
+ * generation nor cellUpdates compare with the other engines. Pass
+ * -p type=HASHLIFE to time it on its own.
+ */
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LifeBenchmark {
+
+    // Every engine but HASHLIFE, see above
+    @Param({"ORDINARY", "NOSYNC", "NOWAIT", "NOSYNC_FLAT", "BITWISE", "NOSYNC_TILED", "NOWAIT_BLOCK", "ORDINARY_P2P", "BITWISE_ACTIVE", "UNBOUNDED", "ORDINARY_OFFHEAP", "NOSYNC_OFFHEAP", "VECTOR", "CHANNEL"})
+    public Life.Type type;
+
+    @Param({"acorn", "counter", "soup"})
+    public String pattern;
+
+    @Param({"400"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"100"})
+    public int generations;
+
+    private RLE rle;
+
+    @Setup(Level.Trial)
+    public void loadPattern() {
+        switch (pattern) {
+            case "acorn":
+                rle = RLE.getAcorn();
+                break;
+            case "counter":
+                rle = RLE.fromFile("DecimalCounter.rle");
+                break;
+            case "soup":
+                rle = RLE.getRandom(size, size, 1);
+                break;
+            default:
+                rle = RLE.fromFile(pattern);
+                break;
+        }
+        if (rle == null) {
+            throw new IllegalArgumentException("bad pattern: " + pattern);
+        }
+    }
+
+    Life create() {
+        return Life.fromRLE(rle, type, size, size, generations, threads, false);
+    }
+
+    /**
+     * A freshly constructed engine for every invocation of execute()
+     */
+    @State(Scope.Thread)
+    public static class Engine {
+        Life life;
+
+        @Setup(Level.Invocation)
+        public void construct(LifeBenchmark bench) {
+            life = bench.create();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() {
+            life.close();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long cellUpdates;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            cellUpdates = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Life construct() {
+        return create();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Life execute(Engine engine, Counters counters) {
+        Life life = engine.life;
+        life.execute();
+        counters.cellUpdates += (long)life.Width * life.Height * generations;
+        return life;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Synchronous parallel bit-sliced implementation of Life
+ *
+ * Rows are packed into long words, 64 cells per word, and the rule is applied
+ * to a whole word at once with carry-save adders. The schedule is the one of
+ * OrdinaryLife: static stripes of rows separated by a barrier per generation.
+ *
+ * With activity tracking the grid is also cut into tiles of one word by
+ * TILE_ROWS rows. A tile is only computed if it or one of its neighbors
+ * changed in the previous generation: otherwise its next state equals its
+ * current state and the buffer being written already holds it. When no tile
+ * changes at all the pattern is a still life and the run stops early, at
+ * the generation it found it, as a run cut short by a cycle.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class BitwiseLife extends Life {
+
+    private static final int TILE_ROWS = 16;
+
+    private final int words;
+    private final int lastBit;
+    private final long lastMask;
+    private final long[] cells;
+    private final long[] alt;
+    private final boolean activity;
+    private final int tilesY;
+    private final boolean[] changed;
+    private final boolean[] active;
+    private CyclicBarrier barrier;
+    private boolean useAlt;
+    private boolean still;
+    private int generation;
+    private final long[][] tallies;
+    private volatile Census census;
+
+    protected int getState(int row, int col) {
+        long[] buf = useAlt ? alt : cells;
+        return (int)(buf[row * words + (col >>> 6)] >>> (col & 63)) & 0x1;
+    }
+
+    protected void setAlive(int row, int col) {
+        cells[row * words + (col >>> 6)] |= 1L << (col & 63);
+    }
+
+    protected Checkpoint getCheckpoint(int time) {
+        return new Checkpoint(Width, Height, epoch + time, rule, (useAlt ? alt : cells).clone());
+    }
+
+    /**
+     * Apply the rule of Life to 64 cells at once: every argument is a word of
+     * the grid shifted so that bit i holds the corresponding neighbor of cell i.
+     * Other rules go through Rule.evolve().
+     */
+    static long evolve(long self,
+                       long nw, long n, long ne,
+                       long w, long e,
+                       long sw, long s, long se)
+    {
+        // Three neighbors above, three below, two aside
+        long t = nw ^ n;
+        long onesN = t ^ ne;
+        long twosN = (nw & n) | (t & ne);
+        t = sw ^ s;
+        long onesS = t ^ se;
+        long twosS = (sw & s) | (t & se);
+        long onesM = w ^ e;
+        long twosM = w & e;
+
+        // Sum of the ones
+        t = onesN ^ onesS;
+        long ones = t ^ onesM;
+        long twos0 = (onesN & onesS) | (t & onesM);
+
+        // Sum of the twos, anything of weight four or more is death
+        t = twosN ^ twosS;
+        long twos1 = t ^ twosM;
+        long fours = (twosN & twosS) | (t & twosM);
+        long twos = twos1 ^ twos0;
+        fours |= twos1 & twos0;
+
+        return ~fours & twos & (ones | self);
+    }
+
+    private long west(long[] buf, int base, int i) {
+        long prev = i > 0 ? buf[base + i - 1] >>> 63 : (buf[base + words - 1] >>> lastBit) & 0x1;
+        return (buf[base + i] << 1) | prev;
+    }
+
+    private long east(long[] buf, int base, int i) {
+        long next = i < words - 1 ? buf[base + i + 1] << 63 : (buf[base] & 0x1) << lastBit;
+        return (buf[base + i] >>> 1) | next;
+    }
+
+    private void updateRow(Rule rule, long[] src, long[] dst, int r) {
+        int mid = r * words;
+        int north = (r == 0 ? Height - 1 : r - 1) * words;
+        int south = (r == Height - 1 ? 0 : r + 1) * words;
+        int tile = r / TILE_ROWS * words;
+        for (int i = 0; i < words; ++i) {
+            if (activity && !active[tile + i]) {
+                continue;
+            }
+            long next = rule.evolve(src[mid + i],
+                    west(src, north, i), src[north + i], east(src, north, i),
+                    west(src, mid, i), east(src, mid, i),
+                    west(src, south, i), src[south + i], east(src, south, i));
+            if (i == words - 1) {
+                next &= lastMask;
+            }
+            dst[mid + i] = next;
+            if (activity && next != src[mid + i]) {
+                changed[tile + i] = true;
+            }
+        }
+    }
+
+    private void runStaticSchedule(int id) {
+
+        int minRow = (int)((long)id * Height / nThreads);
+        int maxRow = (int)((long)(id + 1) * Height / nThreads);
+        Rule rule = this.rule;
+        long[] tally = Census.newTally();
+        tallies[id] = tally;
+        boolean hashing = periodWindow > 0;
+
+        for (int time = current + 1; time <= maxTime; ++time) {
+
+            long[] src = useAlt ? alt : cells;
+            long[] dst = useAlt ? cells : alt;
+            Census.clear(tally);
+            for (int r = minRow; r < maxRow; ++r) {
+                updateRow(rule, src, dst, r);
+                Census.addRow(tally, r, 0, dst, r * words, (r + 1) * words);
+                for (int i = r * words; hashing && i < (r + 1) * words; ++i) {
+                    if (dst[i] != 0) {
+                        Census.hash(tally, mix(i) ^ dst[i]);
+                    }
+                }
+            }
+
+            try {
+                barrier.await();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR in thread " + id);
+                ex.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    protected boolean hasGenerationHook() {
+        return true;
+    }
+
+    protected boolean takesCheckpoints() {
+        return true;
+    }
+
+    /**
+     * Census of the last generation computed, that of a still life stays
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    /**
+     * Barrier action: switch buffers, add up the tallies of the generation,
+     * look for a cycle, take a checkpoint if one is due and select tiles for
+     * the next generation
+     */
+    private void nextGeneration() {
+        useAlt = !useAlt;
+        ++generation;
+        census = new Census(epoch + generation, tallies);
+        onGeneration(generation, Census.hashOf(tallies), Census.checkOf(tallies), generation);
+        if (isCheckpointDue(generation)) {
+            saveCheckpoint(getCheckpoint(generation));
+        }
+        if (!activity) {
+            return;
+        }
+
+        boolean any = false;
+        for (int tr = 0; tr < tilesY; ++tr) {
+            int north = (tr == 0 ? tilesY - 1 : tr - 1) * words;
+            int south = (tr == tilesY - 1 ? 0 : tr + 1) * words;
+            int mid = tr * words;
+            for (int i = 0; i < words; ++i) {
+                int west = i == 0 ? words - 1 : i - 1;
+                int east = i == words - 1 ? 0 : i + 1;
+                active[mid + i] =
+                        changed[north + west] || changed[north + i] || changed[north + east] ||
+                        changed[mid + west]   || changed[mid + i]   || changed[mid + east] ||
+                        changed[south + west] || changed[south + i] || changed[south + east];
+                any |= changed[mid + i];
+            }
+        }
+        Arrays.fill(changed, false);
+        still = !any;
+
+        // Generations left repeat this one: end the run here
+        if (still) {
+            maxTime = generation;
+        }
+    }
+
+    protected void run()
+    {
+        // A still life stays still, nothing is computed
+        if (still) {
+            maxTime = current;
+            return;
+        }
+        generation = current;
+
+        // Run concurrently
+        runWorkers(nThreads, this::runStaticSchedule);
+        awaitCheckpoint();
+    }
+
+    protected void setState(int[] s) {
+        Arrays.fill(cells, 0L);
+        Arrays.fill(alt, 0L);
+        for (int r = 0; r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                if (s[r * Width + c] != 0) {
+                    setAlive(r, c);
+                }
+            }
+        }
+        useAlt = false;
+        generation = T0;
+        census = null;
+        wake();
+    }
+
+    /**
+     * A still life under one rule may not be one under another
+     */
+    public void setRule(Rule r) {
+        super.setRule(r);
+        wake();
+    }
+
+    /**
+     * Everything is new again once the grid or the rule is replaced
+     */
+    private void wake() {
+        Arrays.fill(changed, false);
+        Arrays.fill(active, true);
+        still = false;
+    }
+
+    public BitwiseLife(int w, int h, int t, int p, boolean v, int[] s) {
+        this(w, h, t, p, v, s, false);
+    }
+
+    public BitwiseLife(int w, int h, int t, int p, boolean v, int[] s, boolean a) {
+        super(w, h, t, p, v);
+        activity = a;
+
+        // Pack rows into words
+        words = (Width + 63) >>> 6;
+        lastBit = (Width - 1) & 63;
+        lastMask = -1L >>> (63 - lastBit);
+        cells = new long[Height * words];
+        alt = new long[Height * words];
+        for (int r = 0; s != null && r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                if (s[r * Width + c] != 0) {
+                    setAlive(r, c);
+                }
+            }
+        }
+        useAlt = false;
+        generation = T0;
+        tallies = new long[nThreads][];
+
+        // Everything is new in the first generation
+        tilesY = (Height + TILE_ROWS - 1) / TILE_ROWS;
+        changed = new boolean[activity ? tilesY * words : 0];
+        active = new boolean[changed.length];
+        Arrays.fill(active, true);
+        still = false;
+
+        barrier = new CyclicBarrier(nThreads, this::nextGeneration);
+    }
+
+    public static void main(String[] args) {
+        type = Type.BITWISE;
+        Life.main(args);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Asynchronous parallel wait-free implementation of Life
+ * with rectangular blocks of cells as tasks
+ *
+ * The dataflow is the one of NoWaitLife: every block has two tasks, one per
+ * generation parity, and a task is forked when all nine blocks it reads from
+ * have been computed. Each task owns a block of cells in one of two layers
+ * of the grid, so atomics and task submissions are per block, not per cell.
+ * A task completing the last generation counts its rows into the tally of
+ * the worker running it, the census of maxTime is ready when the run ends.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class BlockNoWaitLife extends Life {
+
+    private final int block;
+    private final int blocksX;
+    private final Block[] blocks;
+    private CountDownLatch finished;
+    private NoWaitLife.Generations generations;
+    private volatile Census census;
+    private NoWaitLife.Workers workers;
+    private ForkJoinPool pool;
+
+    protected int getState(int row, int col) {
+        Block b = blocks[(row / block) * blocksX + col / block];
+        if (b.time < b.neighbors[0].time) {
+            b = b.neighbors[0];
+        }
+        return b.layer[row * Width + col];
+    }
+
+    protected void setAlive(int row, int col) {
+        blocks[0].layer[row * Width + col] = STATE1;
+    }
+
+    private class Block extends ForkJoinTask<Object>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int row0;
+        private int col0;
+        private int width;
+        private int height;
+        private int[] layer;
+        private int time;
+        private Block[] neighbors;
+        private AtomicInteger count;
+
+        public Block(int r, int c, int w, int h, int[] l)
+        {
+            row0 = r;
+            col0 = c;
+            width = w;
+            height = h;
+            layer = l;
+            time = 0;
+            neighbors = new Block[9];
+            count = new AtomicInteger(neighbors.length);
+        }
+
+        /* Not used */
+        public Object getRawResult() { return null; }
+        protected void setRawResult(Object value) {}
+
+        protected boolean exec() {
+            int[] src = neighbors[0].layer;
+            int[] table = rule.table;
+            boolean hashing = generations != null;
+            long hash = 0;
+            long check = 0;
+            time = neighbors[0].time + 1;
+            long[] tally = time == maxTime ? NoWaitLife.Workers.tally() : null;
+            for (int r = row0; r < row0 + height; ++r) {
+                int row = r * Width;
+                int below = (r == 0 ? Height - 1 : r - 1) * Width;
+                int above = (r == Height - 1 ? 0 : r + 1) * Width;
+                for (int c = col0; c < col0 + width; ++c) {
+                    int left = c == 0 ? Width - 1 : c - 1;
+                    int right = c == Width - 1 ? 0 : c + 1;
+                    int sum = src[below + left] + src[below + c] + src[below + right]
+                            + src[row + left] + src[row + right]
+                            + src[above + left] + src[above + c] + src[above + right];
+
+                    // Apply the rule
+                    layer[row + c] = table[(sum << 1) | src[row + c]];
+                    if (hashing && layer[row + c] != STATE0) {
+                        hash += mix(row + c);
+                        check += remix(row + c);
+                    }
+                }
+                if (tally != null) {
+                    int n = 0;
+                    int first = 0;
+                    int last = 0;
+                    for (int c = col0; c < col0 + width; ++c) {
+                        if (layer[row + c] != STATE0) {
+                            if (n++ == 0) first = c;
+                            last = c;
+                        }
+                    }
+                    if (n > 0) {
+                        Census.add(tally, r, first, last, n);
+                    }
+                }
+            }
+
+            reinitialize();
+            count.set(neighbors.length);
+            if (hashing) {
+                generations.complete(BlockNoWaitLife.this, time, hash, check);
+            }
+            if (time == maxTime) {
+                finished.countDown();
+            }
+            else {
+                for (Block b : neighbors) {
+                    if (b.count.addAndGet(-1) == 0) {
+                        b.fork();
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+
+    protected boolean hasGenerationHook() {
+        return true;
+    }
+
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
+    {
+        if (census == null) {
+            census = super.getCensus();
+        }
+        finished = new CountDownLatch(blocks.length);
+        if (periodWindow <= 0 || getPeriod() > 0) {
+            generations = null;
+        }
+        else if (generations == null) {
+            generations = new NoWaitLife.Generations(Math.max(blocksX, blocks.length / blocksX) + 4, blocks.length);
+        }
+
+        if (pool == null) {
+            workers = new NoWaitLife.Workers();
+            pool = workers.newPool(nThreads);
+        }
+        workers.clear();
+
+        // Whichever of the two generations is behind goes next
+        for (Block b : blocks) {
+            pool.execute(b.neighbors[0].time <= b.time ? b.neighbors[0] : b);
+        }
+
+        try {
+            finished.await();
+        }
+        catch (InterruptedException ex) {
+            ex.printStackTrace();
+        }
+
+        census = new Census(epoch + maxTime, workers.getTallies());
+    }
+
+    public void close() {
+        super.close();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private int getNeighbor(int r, int c, int i)
+    {
+        int blocksY = blocks.length / blocksX;
+        switch (i) {
+            case 1:
+                if (--c < 0) c += blocksX;
+            case 2:
+                if (--r < 0) r += blocksY;
+                break;
+            case 3:
+                if (--r < 0) r += blocksY;
+            case 4:
+                if (++c == blocksX) c = 0;
+                break;
+            case 5:
+                if (++c == blocksX) c = 0;
+            case 6:
+                if (++r == blocksY) r = 0;
+                break;
+            case 7:
+                if (++r == blocksY) r = 0;
+            case 8:
+                if (--c < 0) c += blocksX;
+                break;
+        }
+        return r * blocksX + c;
+    }
+
+    protected void setState(int[] s) {
+        int[] layer = blocks[0].layer;
+        for (int idx = 0; idx < layer.length; ++idx) {
+            layer[idx] = s[idx] == 0 ? STATE0 : STATE1;
+        }
+        for (Block b : blocks) {
+            Block alt = b.neighbors[0];
+            b.time = 0;
+            b.count.set(b.neighbors.length);
+            alt.time = 0;
+            alt.count.set(alt.neighbors.length);
+        }
+        census = null;
+    }
+
+    public BlockNoWaitLife(int w, int h, int t, int p, boolean v, int[] s)
+    {
+        this(w, h, t, p, v, s, tileSize);
+    }
+
+    public BlockNoWaitLife(int w, int h, int t, int p, boolean v, int[] s, int size)
+    {
+        super(w, h, t, p, v);
+        if (size < 1) {
+            throw new IllegalArgumentException("block size must be positive: " + size);
+        }
+
+        // Initialize blocks
+        block = size;
+        blocksX = (Width + block - 1) / block;
+        int blocksY = (Height + block - 1) / block;
+        int[] layer = new int[Width * Height];
+        int[] altLayer = new int[Width * Height];
+        for (int idx = 0; s != null && idx < layer.length; ++idx) {
+            layer[idx] = s[idx] == 0 ? STATE0 : STATE1;
+        }
+        blocks = new Block[blocksX * blocksY];
+        for (int r = 0; r < blocksY; ++r) {
+            for (int c = 0; c < blocksX; ++c) {
+                int r0 = r * block;
+                int c0 = c * block;
+                int bw = Math.min(block, Width - c0);
+                int bh = Math.min(block, Height - r0);
+                Block b = new Block(r0, c0, bw, bh, layer);
+                Block alt = new Block(r0, c0, bw, bh, altLayer);
+                b.neighbors[0] = alt;
+                alt.neighbors[0] = b;
+                blocks[r * blocksX + c] = b;
+            }
+        }
+        for (int r = 0; r < blocksY; ++r) {
+            for (int c = 0; c < blocksX; ++c) {
+                Block b = blocks[r * blocksX + c];
+                for (int i = 1; i < b.neighbors.length; ++i) {
+                    Block neighbor = blocks[getNeighbor(r, c, i)].neighbors[0];
+                    b.neighbors[i] = neighbor;
+                    neighbor.neighbors[i + 4 > 8 ? i - 4 : i + 4] = b;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        type = Type.NOWAIT_BLOCK;
+        Life.main(args);
+    }
+
+}
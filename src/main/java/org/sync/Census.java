@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+/**
+ * Population and bounding box of the live cells of a generation
+ *
+ * Engines with a barrier per generation keep a tally per thread of the
+ * cells they have just computed: how many are alive and the extreme rows
+ * and columns among them. The barrier action adds up the tallies into a
+ * census, so a census costs O(threads) per generation and nothing to read.
+ * Engines looking for cycles also sum two independent hashes of the
+ * generation in a tally.
+ * A tally is a padded long[] so that threads do not share cache lines.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public final class Census {
+
+    private static final int POPULATION = 0;
+    private static final int MIN_ROW = 1;
+    private static final int MAX_ROW = 2;
+    private static final int MIN_COL = 3;
+    private static final int MAX_COL = 4;
+    private static final int HASH = 5;
+    private static final int CHECK = 6;
+    private static final int PAD = 8;
+
+    private final int time;
+    private final long population;
+    private final long minRow;
+    private final long maxRow;
+    private final long minCol;
+    private final long maxCol;
+
+    /**
+     * Empty tally of a thread
+     */
+    static long[] newTally() {
+        long[] tally = new long[CHECK + 1 + PAD];
+        clear(tally);
+        return tally;
+    }
+
+    static void clear(long[] tally) {
+        tally[POPULATION] = 0;
+        tally[MIN_ROW] = Long.MAX_VALUE;
+        tally[MAX_ROW] = Long.MIN_VALUE;
+        tally[MIN_COL] = Long.MAX_VALUE;
+        tally[MAX_COL] = Long.MIN_VALUE;
+        tally[HASH] = 0;
+        tally[CHECK] = 0;
+    }
+
+    /**
+     * Add a live cell, or a word of cells with any alive, to the hashes of the generation
+     */
+    static void hash(long[] tally, long key) {
+        tally[HASH] += Life.mix(key);
+        tally[CHECK] += Life.remix(key);
+    }
+
+    /**
+     * Hash of a generation from the tallies of all threads
+     */
+    static long hashOf(long[][] tallies) {
+        long hash = 0;
+        for (long[] tally : tallies) {
+            if (tally != null) {
+                hash += tally[HASH];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Second hash of a generation from the tallies of all threads
+     */
+    static long checkOf(long[][] tallies) {
+        long check = 0;
+        for (long[] tally : tallies) {
+            if (tally != null) {
+                check += tally[CHECK];
+            }
+        }
+        return check;
+    }
+
+    /**
+     * Count a live cell
+     */
+    static void add(long[] tally, long row, long col) {
+        add(tally, row, col, col, 1);
+    }
+
+    /**
+     * Count n live cells of a row between columns c0 and c1
+     */
+    static void add(long[] tally, long row, long c0, long c1, long n) {
+        tally[POPULATION] += n;
+        tally[MIN_ROW] = Math.min(tally[MIN_ROW], row);
+        tally[MAX_ROW] = Math.max(tally[MAX_ROW], row);
+        tally[MIN_COL] = Math.min(tally[MIN_COL], c0);
+        tally[MAX_COL] = Math.max(tally[MAX_COL], c1);
+    }
+
+    /**
+     * Count n live cells of a row of bytes, cells [from, to) of buf, where
+     * the engine has already counted them: only the ends are searched
+     */
+    static void addRow(long[] tally, long row, int n, byte[] buf, int from, int to) {
+        int first = from;
+        while (buf[first] == 0) {
+            ++first;
+        }
+        int last = to - 1;
+        while (buf[last] == 0) {
+            --last;
+        }
+        add(tally, row, first - from, last - from, n);
+    }
+
+    /**
+     * Count the live cells of a row of words, bit i of word j in column 64 * j + i
+     */
+    static void addRow(long[] tally, long row, long col0, long[] buf, int from, int to) {
+        int n = 0;
+        int first = -1;
+        int last = -1;
+        for (int i = from; i < to; ++i) {
+            if (buf[i] != 0) {
+                n += Long.bitCount(buf[i]);
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        add(tally, row,
+            col0 + 64L * (first - from) + Long.numberOfTrailingZeros(buf[first]),
+            col0 + 64L * (last - from) + 63 - Long.numberOfLeadingZeros(buf[last]), n);
+    }
+
+    /**
+     * Sum of the tallies of all threads for generation t
+     */
+    Census(int t, long[]... tallies) {
+        long pop = 0;
+        long r0 = Long.MAX_VALUE;
+        long r1 = Long.MIN_VALUE;
+        long c0 = Long.MAX_VALUE;
+        long c1 = Long.MIN_VALUE;
+        for (long[] tally : tallies) {
+            if (tally != null) {
+                pop += tally[POPULATION];
+                r0 = Math.min(r0, tally[MIN_ROW]);
+                r1 = Math.max(r1, tally[MAX_ROW]);
+                c0 = Math.min(c0, tally[MIN_COL]);
+                c1 = Math.max(c1, tally[MAX_COL]);
+            }
+        }
+        time = t;
+        population = pop;
+        minRow = r0;
+        maxRow = r1;
+        minCol = c0;
+        maxCol = c1;
+    }
+
+    /**
+     * Generation counted
+     */
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * Number of live cells
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * Bounds of the live cells, inclusive and meaningless when there are none
+     */
+    public long getMinRow() {
+        return minRow;
+    }
+
+    public long getMaxRow() {
+        return maxRow;
+    }
+
+    public long getMinCol() {
+        return minCol;
+    }
+
+    public long getMaxCol() {
+        return maxCol;
+    }
+
+    public boolean isEmpty() {
+        return population == 0;
+    }
+
+    public String toString() {
+        if (isEmpty()) {
+            return "Population: 0 at generation " + time;
+        }
+        return "Population: " + population + " in rows " + minRow + ".." + maxRow +
+                ", columns " + minCol + ".." + maxCol + " at generation " + time;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Asynchronous parallel implementation of Life as communicating sequential
+ * processes, one per tile
+ *
+ * This is the network of go-routines and channels of the README: every tile
+ * is a thread that sends the borders of its current generation to its eight
+ * neighbors over channels of capacity one, receives their borders into the
+ * halo of its own rows and computes the next generation. Tiles are at most
+ * one generation apart from their neighbors and nothing else synchronizes.
+ * A tile counts its last generation into a tally of its own, the census of
+ * maxTime is ready when the run ends.
+ *
+ * On Java 21 and later tiles are virtual threads scheduled by the JVM on
+ * carrier threads, as many as -Djdk.virtualThreadScheduler.parallelism or
+ * the number of processors: the scheduler belongs to the JVM, not to an
+ * engine, so nThreads does not change it. Otherwise nThreads platform
+ * threads, kept from run to run, run a stripe of tiles each, a generation
+ * at a time: all sends of the stripe, then all receives, then all steps. A
+ * thread blocked in a send waits for one a phase behind it and one blocked
+ * in a receive for one a phase behind it too, so the slowest thread always
+ * makes progress and the network cannot deadlock however few threads there
+ * are. Waits are the sends and receives that blocked: a scheduler had to
+ * switch away from a process that could not make progress.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class ChannelLife extends Life {
+
+    private static final int[] DX = { -1, 0, 1, 1, 1, 0, -1, -1 };
+    private static final int[] DY = { -1, -1, -1, 0, 1, 1, 1, 0 };
+
+    private static final Method OF_VIRTUAL;
+    private static final Method UNSTARTED;
+    static {
+        Method of = null;
+        Method unstarted = null;
+        try {
+            of = Thread.class.getMethod("ofVirtual");
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        }
+        catch (ReflectiveOperationException e) {
+            of = null;
+        }
+        OF_VIRTUAL = of;
+        UNSTARTED = unstarted;
+    }
+
+    private final int tile;
+    private final int tilesX;
+    private final Tile[] tiles;
+    private volatile Census census;
+
+    private static final class Tile {
+        final int row0;
+        final int col0;
+        final int width;
+        final int height;
+        final int stride;
+        byte[] cur;
+        byte[] next;
+        final Tile[] neighbors = new Tile[8];
+        final List<ArrayBlockingQueue<byte[]>> inbox = new ArrayList<>(8);
+        long waits;
+        final long[] tally = Census.newTally();
+
+        Tile(int r0, int c0, int w, int h) {
+            row0 = r0;
+            col0 = c0;
+            width = w;
+            height = h;
+            stride = w + 2;
+            cur = new byte[(h + 2) * stride];
+            next = new byte[(h + 2) * stride];
+            for (int d = 0; d < 8; ++d) {
+                inbox.add(new ArrayBlockingQueue<>(1));
+            }
+        }
+
+        /**
+         * Copy the cells of the border facing direction d to or from piece:
+         * the own cells of the tile or, with halo, those of the neighbor
+         */
+        void copy(int d, byte[] piece, boolean halo) {
+            int out = halo ? 1 : 0;
+            int r0 = DY[d] < 0 ? 1 - out : DY[d] > 0 ? height + out : 1;
+            int r1 = DY[d] == 0 ? height : r0;
+            int c0 = DX[d] < 0 ? 1 - out : DX[d] > 0 ? width + out : 1;
+            int c1 = DX[d] == 0 ? width : c0;
+            int i = 0;
+            for (int r = r0; r <= r1; ++r) {
+                for (int c = c0; c <= c1; ++c) {
+                    if (halo) {
+                        cur[r * stride + c] = piece[i++];
+                    }
+                    else {
+                        piece[i++] = cur[r * stride + c];
+                    }
+                }
+            }
+        }
+
+        byte[] border(int d) {
+            byte[] piece = new byte[(DY[d] == 0 ? height : 1) * (DX[d] == 0 ? width : 1)];
+            copy(d, piece, false);
+            return piece;
+        }
+
+        void send(int d) throws InterruptedException {
+            ArrayBlockingQueue<byte[]> channel = neighbors[d].inbox.get((d + 4) & 7);
+            byte[] piece = border(d);
+            if (!channel.offer(piece)) {
+                ++waits;
+                channel.put(piece);
+            }
+        }
+
+        void receive(int d) throws InterruptedException {
+            byte[] piece = inbox.get(d).poll();
+            if (piece == null) {
+                ++waits;
+                piece = inbox.get(d).take();
+            }
+            copy(d, piece, true);
+        }
+
+        void step(int[] table) {
+            for (int r = 1; r <= height; ++r) {
+                VectorLife.updateCells(cur, next, (r - 1) * stride, r * stride, (r + 1) * stride, 1, width + 1, table);
+            }
+            byte[] t = cur;
+            cur = next;
+            next = t;
+        }
+
+        void count() {
+            Census.clear(tally);
+            for (int r = 1; r <= height; ++r) {
+                int n = 0;
+                int first = 0;
+                int last = 0;
+                for (int c = 1; c <= width; ++c) {
+                    if (cur[r * stride + c] != STATE0) {
+                        if (n++ == 0) first = c;
+                        last = c;
+                    }
+                }
+                if (n > 0) {
+                    Census.add(tally, row0 + r - 1, col0 + first - 1, col0 + last - 1, n);
+                }
+            }
+        }
+    }
+
+    protected int getState(int row, int col) {
+        Tile t = tiles[(row / tile) * tilesX + col / tile];
+        return t.cur[(row - t.row0 + 1) * t.stride + col - t.col0 + 1];
+    }
+
+    protected void setAlive(int row, int col) {
+        Tile t = tiles[(row / tile) * tilesX + col / tile];
+        t.cur[(row - t.row0 + 1) * t.stride + col - t.col0 + 1] = STATE1;
+    }
+
+    /**
+     * Number of sends and receives that had to wait for a neighbor
+     */
+    public long getWaits() {
+        long sum = 0;
+        for (Tile t : tiles) {
+            sum += t.waits;
+        }
+        return sum;
+    }
+
+    /**
+     * Run tiles from up to to as one process
+     */
+    private void process(int from, int to) {
+        int[] table = rule.table;
+        Tile t = tiles[from];
+        try {
+            for (int time = current + 1; time <= maxTime; ++time) {
+                for (int i = from; i < to; ++i) {
+                    t = tiles[i];
+                    for (int d = 0; d < 8; ++d) {
+                        t.send(d);
+                    }
+                }
+                for (int i = from; i < to; ++i) {
+                    t = tiles[i];
+                    for (int d = 0; d < 8; ++d) {
+                        t.receive(d);
+                    }
+                }
+                for (int i = from; i < to; ++i) {
+                    tiles[i].step(table);
+                }
+            }
+            for (int i = from; i < to; ++i) {
+                tiles[i].count();
+            }
+        }
+        catch (InterruptedException ie) {
+            System.err.println("ERROR in tile " + t.row0 + "," + t.col0);
+            ie.printStackTrace();
+        }
+    }
+
+    private static Thread newVirtualThread(Runnable task) {
+        try {
+            return (Thread)UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create a virtual thread", e);
+        }
+    }
+
+    /**
+     * Whether tiles are virtual threads
+     */
+    public static boolean isVirtual() {
+        return OF_VIRTUAL != null;
+    }
+
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
+    {
+        if (census == null) {
+            census = super.getCensus();
+        }
+        if (!isVirtual()) {
+            int n = Math.min(nThreads, tiles.length);
+            runWorkers(n, i -> process((int)((long)i * tiles.length / n), (int)((long)(i + 1) * tiles.length / n)));
+        }
+        else {
+            // Virtual threads are cheap enough to start one per tile every run
+            Thread[] threads = new Thread[tiles.length];
+            for (int i = 0; i < tiles.length; ++i) {
+                int from = i;
+                threads[i] = newVirtualThread(() -> process(from, from + 1));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+            catch (InterruptedException ie) {
+                ie.printStackTrace();
+            }
+        }
+
+        long[][] tallies = new long[tiles.length][];
+        for (int i = 0; i < tiles.length; ++i) {
+            tallies[i] = tiles[i].tally;
+        }
+        census = new Census(epoch + maxTime, tallies);
+    }
+
+    protected void setState(int[] s) {
+        for (Tile b : tiles) {
+            b.waits = 0;
+            for (int y = 0; y < b.height; ++y) {
+                for (int x = 0; x < b.width; ++x) {
+                    b.cur[(y + 1) * b.stride + x + 1] = (byte)(s[(b.row0 + y) * Width + b.col0 + x] == 0 ? STATE0 : STATE1);
+                }
+            }
+        }
+        census = null;
+    }
+
+    public ChannelLife(int w, int h, int t, int p, boolean v, int[] s)
+    {
+        this(w, h, t, p, v, s, tileSize);
+    }
+
+    public ChannelLife(int w, int h, int t, int p, boolean v, int[] s, int size)
+    {
+        super(w, h, t, p, v);
+        if (size < 1) {
+            throw new IllegalArgumentException("tile size must be positive: " + size);
+        }
+
+        // Initialize tiles
+        tile = size;
+        tilesX = (Width + tile - 1) / tile;
+        int tilesY = (Height + tile - 1) / tile;
+        tiles = new Tile[tilesX * tilesY];
+        for (int r = 0; r < tilesY; ++r) {
+            for (int c = 0; c < tilesX; ++c) {
+                int r0 = r * tile;
+                int c0 = c * tile;
+                Tile b = new Tile(r0, c0, Math.min(tile, Width - c0), Math.min(tile, Height - r0));
+                for (int y = 0; s != null && y < b.height; ++y) {
+                    for (int x = 0; x < b.width; ++x) {
+                        b.cur[(y + 1) * b.stride + x + 1] = (byte)(s[(r0 + y) * Width + c0 + x] == 0 ? STATE0 : STATE1);
+                    }
+                }
+                tiles[r * tilesX + c] = b;
+            }
+        }
+        for (int r = 0; r < tilesY; ++r) {
+            for (int c = 0; c < tilesX; ++c) {
+                for (int d = 0; d < 8; ++d) {
+                    int nr = Math.floorMod(r + DY[d], tilesY);
+                    int nc = Math.floorMod(c + DX[d], tilesX);
+                    tiles[r * tilesX + c].neighbors[d] = tiles[nr * tilesX + nc];
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        type = Type.CHANNEL;
+        Life.main(args);
+    }
+}
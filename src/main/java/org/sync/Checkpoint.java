@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Grid state at a given generation, one bit per cell
+ *
+ * It is also the compact form of a result: a snapshot is 1/16 of the chars
+ * of getResult() and compares with equals, getPopulation() and getHash().
+ *
+ * Rows are packed into long words exactly as in BitwiseLife. On disk a
+ * checkpoint is a header (magic, version, width, height, generation, rule),
+ * the words of all rows and a CRC32 of everything before it. A checkpoint
+ * is written to a temporary file first and then renamed over the target,
+ * so a crash during a write leaves the previous checkpoint intact.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class Checkpoint {
+
+    private static final int MAGIC = 0x4c494645;
+    private static final int VERSION = 1;
+
+    private final int w;
+    private final int h;
+    private final int time;
+    private final Rule rule;
+    private final int words;
+    private final long[] bits;
+
+    public int getW() {
+        return w;
+    }
+
+    public int getH() {
+        return h;
+    }
+
+    /**
+     * Generation of the state
+     */
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * Rule the state evolves by
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    public int getState(int x, int y) {
+        return (int)(bits[y * words + (x >>> 6)] >>> (x & 63)) & 0x1;
+    }
+
+    void setState(int x, int y, int s) {
+        long mask = 1L << (x & 63);
+        int idx = y * words + (x >>> 6);
+        bits[idx] = s == 0 ? bits[idx] & ~mask : bits[idx] | mask;
+    }
+
+    /**
+     * Number of live cells
+     */
+    public long getPopulation() {
+        long pop = 0;
+        for (long word : bits) {
+            pop += Long.bitCount(word);
+        }
+        return pop;
+    }
+
+    /**
+     * 64-bit hash of the grid size and content, not of the generation
+     */
+    public long getHash() {
+        long hash = ((long)w << 32) | h;
+        for (long word : bits) {
+            hash = (hash ^ word) * 0x9e3779b97f4a7c15L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof Checkpoint)) return false;
+        Checkpoint cp = (Checkpoint)o;
+        return w == cp.w && h == cp.h && time == cp.time && rule.equals(cp.rule) && Arrays.equals(bits, cp.bits);
+    }
+
+    /**
+     * Whether the grid and the rule are those of cp, whatever their generations
+     */
+    public boolean sameState(Checkpoint cp) {
+        return w == cp.w && h == cp.h && rule.equals(cp.rule) && Arrays.equals(bits, cp.bits);
+    }
+
+    public int hashCode() {
+        return (int)getHash();
+    }
+
+    public String toString() {
+        return w + "x" + h + " at " + time + ": population " + getPopulation() +
+                ", hash " + String.format("%016x", getHash());
+    }
+
+    /**
+     * Row-major states, one int per cell
+     */
+    public int[] getState() {
+        int[] state = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                state[y * w + x] = getState(x, y);
+            }
+        }
+        return state;
+    }
+
+    Checkpoint(int width, int height, int t, Rule r) {
+        this(width, height, t, r, new long[height * ((width + 63) >>> 6)]);
+    }
+
+    /**
+     * Rows packed as in BitwiseLife, the array is not copied
+     */
+    Checkpoint(int width, int height, int t, Rule r, long[] b) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("bad grid size: " + width + "x" + height);
+        }
+        w = width;
+        h = height;
+        time = t;
+        rule = r;
+        words = (w + 63) >>> 6;
+        if (b.length != h * words) {
+            throw new IllegalArgumentException("bad number of words: " + b.length);
+        }
+        bits = b;
+    }
+
+    public void write(String fname) {
+        Path path = Paths.get(fname).toAbsolutePath();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(w);
+            out.writeInt(h);
+            out.writeInt(time);
+            out.writeUTF(rule.toString());
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+            out.writeInt((int)crc.getValue());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("cannot write " + tmp, ex);
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("cannot replace " + path, ex);
+        }
+    }
+
+    private static Rule parseRule(String str) throws IOException {
+        try {
+            return Rule.parse(str);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    public static Checkpoint read(String fname) {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(fname), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version);
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int t = in.readInt();
+            Rule r = parseRule(in.readUTF());
+            if (width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE) {
+                throw new IOException("bad grid size: " + width + "x" + height);
+            }
+            long[] b = new long[height * ((width + 63) >>> 6)];
+            for (int i = 0; i < b.length; ++i) {
+                b[i] = in.readLong();
+            }
+            int sum = (int)crc.getValue();
+            if (in.readInt() != sum) {
+                throw new IOException("checksum mismatch");
+            }
+            return new Checkpoint(width, height, t, r, b);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("bad checkpoint: " + fname, ex);
+        }
+    }
+}
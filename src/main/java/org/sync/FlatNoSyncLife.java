@@ -0,0 +1,407 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+/**
+ * Asynchronous parallel wait-free unsynchronized implementation of Life
+ * over a flat array of cell states
+ *
+ * The protocol is exactly the one of NoSyncLife, but instead of a Cell object
+ * per grid cell all state is kept in a single int[] with three slots per cell:
+ * two generation slots and the parity slot. Neighbor indices are computed
+ * on the torus rather than followed through references.
+ *
+ * The array may also live off the heap in a Storage, direct memory or
+ * a memory-mapped file, with long indices for grids of more than 2^31 cells.
+ * Such a grid is built without an initial state, all dead, and its live
+ * cells are then set one by one, each flipping the parity of its
+ * neighborhood.
+ *
+ * A thread stops after finding every cell at maxTime in one scan. The scan
+ * of the first thread also counts the live cells into a tally, the census
+ * of maxTime.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class FlatNoSyncLife extends Life {
+
+    private final long size;
+    private final int[] state;
+    private final Storage store;
+    private final long[] tally = Census.newTally();
+    private volatile Census census;
+
+    private int get(long idx) {
+        return store == null ? state[(int)idx] : store.get(idx);
+    }
+
+    private void set(long idx, int value) {
+        if (store == null) {
+            state[(int)idx] = value;
+        }
+        else {
+            store.set(idx, value);
+        }
+    }
+
+    protected int getState(int row, int col) {
+        long base = 3 * ((long)row * Width + col);
+        return Math.max(get(base), get(base + 1)) & 0x1;
+    }
+
+    /**
+     * Make a cell of generation T0 alive: the parity slots of the cell and
+     * its neighbors hold the sum of their states, flip them
+     */
+    protected void setAlive(int row, int col) {
+        long idx = (long)row * Width + col;
+        long slot = 3 * idx + (T0 & 0x1);
+        int S = get(slot);
+        if ((S & 0x1) != 0) {
+            return;
+        }
+        set(slot, S | STATE1);
+        set(3 * idx + 2, get(3 * idx + 2) ^ STATE1);
+        long[] neighbors = new long[8];
+        getNeighbors(row, col, neighbors);
+        for (long neighbor : neighbors) {
+            set(3 * neighbor + 2, get(3 * neighbor + 2) ^ STATE1);
+        }
+    }
+
+    private void runUnsync(int id)
+    {
+        NoSyncLife.PseudoRandom rnd = new NoSyncLife.PseudoRandom(id);
+        int[] table = rule.table;
+        long[] next = new long[16];
+        long[] neighbors = new long[8];
+        long[] count = id == 0 ? tally : null;
+
+        // Start apart
+        long cur = size * id / nThreads;
+        long wired = cur;
+        int row = (int)(cur / Width);
+        int col = (int)(cur % Width);
+        getNeighbors(row, col, neighbors);
+
+        mainLoop:
+        for (;;) {
+            if (wired != cur) {
+                // Sequential sweep stays within a row most of the time
+                if (cur == wired + 1 && col + 1 < Width) {
+                    ++col;
+                }
+                else {
+                    row = (int)(cur / Width);
+                    col = (int)(cur - (long)row * Width);
+                }
+                getNeighbors(row, col, neighbors);
+                wired = cur;
+            }
+            long base = 3 * cur;
+            int s0 = get(base);
+            int s1 = get(base + 1);
+            int S0 = Math.min(s0, s1);
+            int S1 = Math.max(s0, s1);
+            int S2 = get(base + 2);
+
+            int TS0 = S0 >> 1;
+            int TS1 = S1 >> 1;
+            int TS2 = S2 >> 1;
+
+            if (TS2 < TS1) {
+                int off = TS1 & 0x1;
+                int cnt = 0;
+                int V = S1;
+                for (long neighbor : neighbors) {
+                    int val = get(3 * neighbor + off);
+                    if ((val >> 1) == TS1) {
+                        V ^= val;
+                    }
+                    else {
+                        next[cnt++] = neighbor;
+                    }
+                }
+                if (cnt == 0) {
+                    set(base + 2, V);
+                    cur = cur + 1 == size ? 0 : cur + 1;
+                    continue mainLoop;
+                }
+
+                if (TS2 < TS0) {
+                    cnt = 0;
+                    off = TS0 & 0x1;
+                    V = S0;
+                    for (long neighbor : neighbors) {
+                        int val = get(3 * neighbor + off);
+                        if ((val >> 1) == TS0) {
+                            V ^= val;
+                        }
+                        else {
+                            next[cnt++] = neighbor;
+                        }
+                    }
+                    if (cnt == 0) {
+                        set(base + 2, V);
+                        continue mainLoop;
+                    }
+                }
+                else if (TS2 == TS0) {
+                    cnt = 0;
+                    off = TS0 & 0x1;
+                    V = S0 ^ S2;
+                    for (long neighbor : neighbors) {
+                        int val = get(3 * neighbor + off);
+                        if ((val >> 1) == TS0) {
+                            V ^= val;
+                        }
+                        else {
+                            next[cnt++] = neighbor;
+                        }
+                    }
+                    if (cnt == 1) {
+                        set(3 * next[0] + off, V);
+                        continue mainLoop;
+                    }
+                }
+                else {
+                    cnt = 0;
+                    next[cnt++] = cur;
+                    off = TS2 & 0x1;
+                    V = S2;
+                    for (long neighbor : neighbors) {
+                        int val = get(3 * neighbor + off);
+                        if ((val >> 1) == TS2) {
+                            V ^= val;
+                        }
+                        else {
+                            next[cnt++] = neighbor;
+                        }
+                    }
+                    if (cnt == 1) {
+                        set(3 * next[0] + off, V);
+                        continue mainLoop;
+                    }
+                }
+                cur = next[rnd.nextInt(cnt)];
+            }
+            else if (TS2 == TS1) {
+                int off = TS2 & 0x1;
+                int cnt = 0;
+                int sum = 0;
+
+                int V = S1 ^ S2;
+                for (long neighbor : neighbors) {
+                    int val = get(3 * neighbor + off);
+                    if ((val >> 1) == TS2) {
+                        V ^= val;
+                        sum += val & 0x1;
+                    }
+                    else {
+                        next[cnt++] = neighbor;
+                    }
+                }
+                if (cnt == 1) {
+                    set(3 * next[0] + off, V);
+                    sum += V & 0x1;
+                    cnt = 0;
+                }
+
+                int cnt2 = cnt;
+                long rnext = -1;
+                for (long neighbor : neighbors) {
+                    int val = get(3 * neighbor + 2);
+                    if ((val >> 1) <= TS2) {
+                        if ((val >> 1) < TS2) {
+                            ++cnt2;
+                            rnext = neighbor;
+                        }
+                        if (cnt > 0) {
+                            next[cnt++] = neighbor;
+                        }
+                    }
+                }
+                if (cnt2 > 0) {
+                    cur = rnext >= 0 ? rnext : next[rnd.nextInt(cnt)];
+                    continue mainLoop;
+                }
+
+                // Are we done?
+                if (TS1 == maxTime) {
+                    if (count != null) {
+                        Census.clear(count);
+                    }
+                    long idx = cur;
+                    for (long n = 0; n < size; ++n) {
+                        if (++idx == size) idx = 0;
+                        cur = idx;
+                        int S = Math.max(get(3 * idx), get(3 * idx + 1));
+                        if (S >> 1 != maxTime) continue mainLoop;
+                        if (count != null && (S & 0x1) != 0) {
+                            Census.add(count, idx / Width, idx % Width);
+                        }
+                    }
+                    return;
+                }
+
+                // Apply the rule
+                int nextState = table[(sum << 1) | (S1 & 0x1)];
+                set(base + 1 - off, ((TS1 + 1) << 1) | nextState);
+                cur = cur + 1 == size ? 0 : cur + 1;
+            }
+            else {
+                int off = TS2 & 0x1;
+                int cnt = 0;
+                int V = S2;
+                for (long neighbor : neighbors) {
+                    int val = get(3 * neighbor + off);
+                    if ((val >> 1) == TS2) {
+                        V ^= val;
+                    }
+                    else {
+                        cnt++;
+                        break;
+                    }
+                }
+                if (cnt == 0) {
+                    set(base + off, V);
+                    continue mainLoop;
+                }
+
+                off = TS1 & 0x1;
+                int sum = 0;
+                for (long neighbor : neighbors) {
+                    int val = get(3 * neighbor + off);
+                    if ((val >> 1) == TS1) {
+                        sum += val & 0x1;
+                    }
+                    else {
+                        continue mainLoop;
+                    }
+                }
+
+                // Apply the rule
+                int nextState = table[(sum << 1) | (S1 & 0x1)];
+                set(base + 1 - off, ((TS1 + 1) << 1) | nextState);
+            }
+        }
+    }
+
+    /**
+     * Census of the generation the last run ended at, or of the one the
+     * running one started from
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
+    {
+        if (census == null) {
+            census = super.getCensus();
+        }
+
+        // Run concurrently
+        runWorkers(nThreads, this::runUnsync);
+        census = new Census(epoch + maxTime, tally);
+    }
+
+    /**
+     * Cell neighbors wrapped around a torus, in the order of NoSyncLife:
+     *       -------------
+     *    +1 | 6 | 5 | 4 |
+     *       -------------
+     *     r | 7 |   | 3 |
+     *       -------------
+     *    -1 | 0 | 1 | 2 |
+     *       -------------
+     *        -1   c  +1
+     */
+    private void getNeighbors(int r, int c, long[] neighbors)
+    {
+        long row = (long)r * Width;
+        long below = r == 0 ? row + (long)(Height - 1) * Width : row - Width;
+        long above = r == Height - 1 ? 0 : row + Width;
+        int left = c == 0 ? Width - 1 : c - 1;
+        int right = c == Width - 1 ? 0 : c + 1;
+        neighbors[0] = below + left;
+        neighbors[1] = below + c;
+        neighbors[2] = below + right;
+        neighbors[3] = row + right;
+        neighbors[4] = above + right;
+        neighbors[5] = above + c;
+        neighbors[6] = above + left;
+        neighbors[7] = row + left;
+    }
+
+    protected void setState(int[] s) {
+        init(s);
+        census = null;
+    }
+
+    public FlatNoSyncLife(int w, int h, int t, int p, boolean v, int[] s)
+    {
+        this(w, h, t, p, v, s, false);
+    }
+
+    public FlatNoSyncLife(int w, int h, int t, int p, boolean v, int[] s, boolean offHeap)
+    {
+        super(w, h, t, p, v);
+
+        // Initialize cells
+        size = (long)Width * Height;
+        if (!offHeap && 3 * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid of " + size + " cells does not fit the heap, use NOSYNC_OFFHEAP");
+        }
+        state = offHeap ? null : new int[(int)(3 * size)];
+        store = offHeap ? Storage.create(3 * size) : null;
+        init(s);
+    }
+
+    /**
+     * All cells at generation T0 with states s, all dead if s is null
+     */
+    private void init(int[] s) {
+        int off = T0 & 0x1;
+        for (long idx = 0; idx < size; ++idx) {
+            set(3 * idx + 1 - off, (T0 - 1) << 1);
+            set(3 * idx + off, (T0 << 1) | (s == null || s[(int)idx] == 0 ? STATE0 : STATE1));
+            // The parity of nine dead cells, or none summed yet
+            set(3 * idx + 2, s == null ? T0 << 1 : 0);
+        }
+        if (s == null) {
+            return;
+        }
+        long[] neighbors = new long[8];
+        for (long idx = 0; idx < size; ++idx) {
+            int S = get(3 * idx + off);
+            set(3 * idx + 2, get(3 * idx + 2) ^ S);
+            getNeighbors((int)(idx / Width), (int)(idx % Width), neighbors);
+            for (long neighbor : neighbors) {
+                set(3 * neighbor + 2, get(3 * neighbor + 2) ^ S);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        type = Type.NOSYNC_FLAT;
+        Life.main(args);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serial HashLife implementation of Life
+ *
+ * The universe is a canonicalized quadtree with memoized future results.
+ * A node of level k is a square of 2^k cells; its result after 2^j generations,
+ * j <= k-2, is the centered square of 2^(k-1) cells.
+ *
+ * The torus of the other engines is reproduced by tiling the plane with
+ * the grid: a periodic state stays periodic, so the center of a large enough
+ * periodic node is exactly the torus after the step. When both sides of the
+ * grid are powers of two the tiling is aligned with the quadtree, there is
+ * one distinct node per level above the grid, and maxTime generations take
+ * at most log2(maxTime)+1 steps. Otherwise node positions repeat only modulo
+ * the grid size and a dense pattern would create ever more nodes overlapping
+ * the torus, so steps start at a quarter of the grid and only grow while
+ * they create few nodes compared to the grid area, as sparse patterns do.
+ *
+ * The result of a step is the next step's source: on aligned grids its
+ * nodes are looked up in it, so a step costs only the nodes it creates.
+ * Other grids are rebuilt from cells every step. Cells are extracted from
+ * the result only when getState() reads them.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class HashLife extends Life {
+
+    private static final int MAX_CACHE = 1 << 21;
+
+    private final AtomicReference<Frame> frame = new AtomicReference<>();
+    private final int level;
+    private final boolean aligned;
+    private final int minStep;
+    private int maxStep;
+    private final HashMap<Node, Node> nodes = new HashMap<>();
+
+    private static final class Node {
+        final int level;
+        final Node nw, ne, sw, se;
+        final long population;
+        final int hash;
+        Node[] next;
+
+        Node(int id, int alive) {
+            level = 0;
+            nw = ne = sw = se = null;
+            population = alive;
+            hash = id;
+        }
+
+        Node(Node a, Node b, Node c, Node d) {
+            level = a.level + 1;
+            nw = a;
+            ne = b;
+            sw = c;
+            se = d;
+            population = a.population + b.population + c.population + d.population;
+            int h = a.hash;
+            h = h * 0x9e3779b1 + b.hash;
+            h = h * 0x9e3779b1 + c.hash;
+            h = h * 0x9e3779b1 + d.hash;
+            hash = h ^ (h >>> 16);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) return false;
+            Node n = (Node)o;
+            return nw == n.nw && ne == n.ne && sw == n.sw && se == n.se;
+        }
+    }
+
+    private static final Node DEAD = new Node(0, STATE0);
+    private static final Node ALIVE = new Node(1, STATE1);
+
+    /**
+     * The current generation as the node at (0, 0) of the plane tiled with
+     * the grid, null before the first step, and its cells, null until read.
+     * Frames are replaced as a whole, so that the Renderer never samples a
+     * half-extracted grid.
+     */
+    private static final class Frame {
+        final Node root;
+        final int[] cells;
+
+        Frame(Node r, int[] c) {
+            root = r;
+            cells = c;
+        }
+    }
+
+    /**
+     * Frame of the current generation with its cells extracted
+     */
+    private Frame extracted() {
+        Frame f = frame.get();
+        if (f.cells == null) {
+            int[] cells = new int[Width * Height];
+            extract(f.root, 0, 0, cells);
+            Frame g = new Frame(f.root, cells);
+            f = frame.compareAndSet(f, g) ? g : extracted();
+        }
+        return f;
+    }
+
+    protected int getState(int row, int col) {
+        return extracted().cells[row * Width + col];
+    }
+
+    /**
+     * The quadtree is rebuilt from the cells at the next step
+     */
+    protected void setAlive(int row, int col) {
+        int[] cells = extracted().cells;
+        cells[row * Width + col] = STATE1;
+        frame.set(new Frame(null, cells));
+    }
+
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        Node node = new Node(nw, ne, sw, se);
+        Node canon = nodes.putIfAbsent(node, node);
+        return canon != null ? canon : node;
+    }
+
+    /**
+     * One generation of the center 2x2 of a 4x4 node
+     */
+    private Node life4x4(Node m) {
+        int[] b = new int[16];
+        Node[] quads = { m.nw, m.ne, m.sw, m.se };
+        for (int q = 0; q < 4; ++q) {
+            int x0 = (q & 0x1) << 1;
+            int y0 = q & 0x2;
+            b[y0 * 4 + x0]         = (int)quads[q].nw.population;
+            b[y0 * 4 + x0 + 1]     = (int)quads[q].ne.population;
+            b[(y0 + 1) * 4 + x0]     = (int)quads[q].sw.population;
+            b[(y0 + 1) * 4 + x0 + 1] = (int)quads[q].se.population;
+        }
+        Node[] res = new Node[4];
+        for (int q = 0; q < 4; ++q) {
+            int x = 1 + (q & 0x1);
+            int y = 1 + (q >> 1);
+            int sum = 0;
+            for (int dy = -1; dy <= 1; ++dy) {
+                for (int dx = -1; dx <= 1; ++dx) {
+                    if (dx != 0 || dy != 0) {
+                        sum += b[(y + dy) * 4 + x + dx];
+                    }
+                }
+            }
+
+            // Apply the rule
+            res[q] = rule.next(b[y * 4 + x], sum) == STATE0 ? DEAD : ALIVE;
+        }
+        return join(res[0], res[1], res[2], res[3]);
+    }
+
+    /**
+     * The center of node m after 2^j generations, j <= m.level-2
+     */
+    private Node successor(Node m, int j) {
+        if (m.next == null) {
+            m.next = new Node[m.level - 1];
+        }
+        Node res = m.next[j];
+        if (res != null) {
+            return res;
+        }
+
+        if (m.population == 0 && !rule.hasB0()) {
+            res = m.nw;
+        }
+        else if (m.level == 2) {
+            res = life4x4(m);
+        }
+        else {
+            // Nine overlapping subnodes of level k-1
+            Node n00 = m.nw;
+            Node n01 = join(m.nw.ne, m.ne.nw, m.nw.se, m.ne.sw);
+            Node n02 = m.ne;
+            Node n10 = join(m.nw.sw, m.nw.se, m.sw.nw, m.sw.ne);
+            Node n11 = join(m.nw.se, m.ne.sw, m.sw.ne, m.se.nw);
+            Node n12 = join(m.ne.sw, m.ne.se, m.se.nw, m.se.ne);
+            Node n20 = m.sw;
+            Node n21 = join(m.sw.ne, m.se.nw, m.sw.se, m.se.sw);
+            Node n22 = m.se;
+
+            int k = m.level;
+            int j1 = Math.min(j, k - 3);
+            Node c00 = successor(n00, j1);
+            Node c01 = successor(n01, j1);
+            Node c02 = successor(n02, j1);
+            Node c10 = successor(n10, j1);
+            Node c11 = successor(n11, j1);
+            Node c12 = successor(n12, j1);
+            Node c20 = successor(n20, j1);
+            Node c21 = successor(n21, j1);
+            Node c22 = successor(n22, j1);
+
+            if (j < k - 2) {
+                res = join(
+                        join(c00.se, c01.sw, c10.ne, c11.nw),
+                        join(c01.se, c02.sw, c11.ne, c12.nw),
+                        join(c10.se, c11.sw, c20.ne, c21.nw),
+                        join(c11.se, c12.sw, c21.ne, c22.nw));
+            }
+            else {
+                res = join(
+                        successor(join(c00, c01, c10, c11), j1),
+                        successor(join(c01, c02, c11, c12), j1),
+                        successor(join(c10, c11, c20, c21), j1),
+                        successor(join(c11, c12, c21, c22), j1));
+            }
+        }
+        m.next[j] = res;
+        return res;
+    }
+
+    /**
+     * Node of the given level at (xm, ym) of root, null unless aligned with
+     * its quadtree
+     */
+    private static Node find(Node root, int level, long xm, long ym) {
+        long size = 1L << level;
+        long span = 1L << root.level;
+        if (xm % size != 0 || ym % size != 0 || xm + size > span || ym + size > span) {
+            return null;
+        }
+        Node node = root;
+        for (int l = root.level; l > level; --l) {
+            long half = 1L << (l - 1);
+            boolean east = (xm & half) != 0;
+            boolean south = (ym & half) != 0;
+            node = south ? (east ? node.se : node.sw) : (east ? node.ne : node.nw);
+        }
+        return node;
+    }
+
+    /**
+     * Node of the given level at (x, y) of the plane tiled with the grid,
+     * taken from the tiled plane src if any, or built from cells
+     */
+    private Node build(int level, long x, long y, HashMap<Long, Node> memo, Node src, int[] cells) {
+        int xm = (int)Math.floorMod(x, (long)Width);
+        int ym = (int)Math.floorMod(y, (long)Height);
+        if (src != null) {
+            Node node = find(src, level, xm, ym);
+            if (node != null) {
+                return node;
+            }
+        }
+        if (level == 0) {
+            return cells[ym * Width + xm] == STATE0 ? DEAD : ALIVE;
+        }
+        Long key = null;
+        if (level >= 2) {
+            key = ((long)level << 58) | ((long)xm << 29) | ym;
+            Node node = memo.get(key);
+            if (node != null) {
+                return node;
+            }
+        }
+        long half = 1L << (level - 1);
+        Node node = join(
+                build(level - 1, x, y, memo, src, cells),
+                build(level - 1, x + half, y, memo, src, cells),
+                build(level - 1, x, y + half, memo, src, cells),
+                build(level - 1, x + half, y + half, memo, src, cells));
+        if (key != null) {
+            memo.put(key, node);
+        }
+        return node;
+    }
+
+    private void extract(Node node, long x, long y, int[] cells) {
+        if (node.population == 0 || x >= Width || y >= Height) {
+            return;
+        }
+        if (node.level == 0) {
+            cells[(int)y * Width + (int)x] = STATE1;
+            return;
+        }
+        long half = 1L << (node.level - 1);
+        extract(node.nw, x, y, cells);
+        extract(node.ne, x + half, y, cells);
+        extract(node.sw, x, y + half, cells);
+        extract(node.se, x + half, y + half, cells);
+    }
+
+    /**
+     * Advance the grid by 2^j generations
+     */
+    private void step(int j) {
+        int k = Math.max(level, j + 2);
+        long origin = -(1L << (k - 2));
+        Frame f = frame.get();
+        if (f.root == null || !aligned) {
+            f = extracted();
+        }
+        Node root = build(k, origin, origin, new HashMap<>(), aligned ? f.root : null, f.cells);
+        int created = nodes.size();
+        Node res = successor(root, j);
+        created = nodes.size() - created;
+
+        // Grow steps while they are cheap compared to the grid, shrink them back when not
+        long area = (long)Width * Height;
+        if (16L * created <= area && j == maxStep && maxStep < 30) {
+            ++maxStep;
+        }
+        else if (created > area && maxStep > minStep) {
+            --maxStep;
+        }
+
+        frame.set(new Frame(res, null));
+
+        // Nodes are only shared between steps through the canonical table
+        if (nodes.size() > MAX_CACHE) {
+            nodes.clear();
+        }
+    }
+
+    protected void run()
+    {
+        int remaining = maxTime - current;
+        while (remaining > 0) {
+            int j = Math.min(31 - Integer.numberOfLeadingZeros(remaining), maxStep);
+            step(j);
+            remaining -= 1 << j;
+        }
+    }
+
+    protected void setState(int[] s) {
+        int[] cells = new int[Width * Height];
+        for (int idx = 0; s != null && idx < cells.length; ++idx) {
+            cells[idx] = s[idx] == 0 ? STATE0 : STATE1;
+        }
+        frame.set(new Frame(null, cells));
+        maxStep = minStep;
+    }
+
+    /**
+     * Cached nodes hold results under the rule they were computed with
+     */
+    public void setRule(Rule r) {
+        if (!r.equals(rule)) {
+            nodes.clear();
+        }
+        super.setRule(r);
+    }
+
+    public HashLife(int w, int h, int t, int p, boolean v, int[] s)
+    {
+        super(w, h, t, p, v);
+
+        // The result of a node of level k covers 2^(k-1) cells
+        int k = 2;
+        while ((1L << (k - 1)) < Math.max(Width, Height)) {
+            ++k;
+        }
+        level = k;
+        aligned = Integer.bitCount(Width) == 1 && Integer.bitCount(Height) == 1;
+        minStep = aligned ? 30 : level - 2;
+        maxStep = minStep;
+
+        setState(s);
+    }
+
+    public static void main(String[] args) {
+        type = Type.HASHLIFE;
+        Life.main(args);
+    }
+}
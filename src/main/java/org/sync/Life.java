@@ -16,12 +16,18 @@
 
 package org.sync;
 
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 
 /**
  * Chaotic Life
@@ -30,65 +36,599 @@ import java.awt.image.DataBufferInt;
  *
  */
 
-public abstract class Life {
+public abstract class Life implements AutoCloseable {
 
-    public enum Type { ORDINARY, NOSYNC, NOWAIT };
+    public enum Type { ORDINARY, NOSYNC, NOWAIT, NOSYNC_FLAT, BITWISE, NOSYNC_TILED, NOWAIT_BLOCK, ORDINARY_P2P, HASHLIFE, BITWISE_ACTIVE, UNBOUNDED,
+                       ORDINARY_OFFHEAP, NOSYNC_OFFHEAP, VECTOR, CHANNEL };
     protected static final int STATE0 = 0;
     protected static final int STATE1 = 1;
     protected static final int T0 = 0;
-    private static final int[] COLORS = {
-            0xff8000, 0xffffff, 0xff0000, 0x00ff00,
-            0x0000ff, 0xffff00, 0xff00ff, 0x00ffff,
-    };
+
+    /**
+     * Fewest indices worth a thread of their own in parallel()
+     */
+    private static final int MIN_RANGE = 1 << 14;
 
     protected static Type type = Type.NOSYNC;
+    protected static int tileSize = 32;
+    protected static String mapFile = null;
+    protected static String checkpointFile = null;
+    protected static int checkpointInterval = 1000;
+    protected static String frameDir = null;
+    protected static boolean affinity = false;
+    protected static int periodWindow = 0;
 
     protected final int Width;
     protected final int Height;
-    protected final int maxTime;
+
+    /**
+     * Internal generation the engine runs up to, set by execute() before
+     * every run and lowered by onGeneration() once the grid cycles
+     */
+    protected int maxTime;
+
+    /**
+     * Generation execute() runs up to
+     */
+    private int endTime;
     protected final int nThreads;
 
-    private final boolean vis;
-    private int[] imgData;
+    protected final boolean vis;
+    private Renderer renderer;
+
+    /**
+     * Generation of the initial state, non-zero when resumed from a checkpoint
+     * and moved forward by the whole periods skipped once the grid cycles
+     */
+    protected int epoch;
+    private Thread writer;
+    /**
+     * Daemon threads of runWorkers(), kept from run to run until close()
+     */
+    private ExecutorService workers;
+
+    /**
+     * Two independent hashes of the last periodWindow generations, by
+     * generation modulo the window, and the period and first generation
+     * of the cycle once found
+     */
+    private long[] hashes;
+    private long[] checks;
+    private int[] hashTimes;
+    private int period;
+    private int stableTime;
+
+    /**
+     * Snapshots every periodWindow generations, the last periodWindow + 1
+     * of them, for engines without a generation hook
+     */
+    private ArrayDeque<Checkpoint> segments;
 
-    public abstract void execute();
+    /**
+     * Generations computed since the engine was built or reset
+     */
+    private long computed;
 
+    /**
+     * Generation of the current state, where the next run continues from
+     */
+    protected int current = T0;
+
+    /**
+     * Rule applied by the engine, Life unless set before execute()
+     */
+    protected Rule rule = Rule.LIFE;
+
+    /**
+     * Compute all generations up to maxTime
+     */
+    protected abstract void run();
+
+    /**
+     * State of a cell, also read by the Renderer while the engine runs
+     */
     protected abstract int getState(int row, int col);
 
-    protected void setColor(int idx, int color) {
-        if (vis) {
-            imgData[idx] = color == 0 ? 0 : COLORS[color % COLORS.length];
+    /**
+     * Run the engine up to maxTime, sampled by a Renderer if visualization
+     * or frames are requested
+     */
+    public void execute() {
+        if (renderer == null && (vis || frameDir != null)) {
+            renderer = new Renderer(this, vis, frameDir);
+        }
+        if (renderer != null) {
+            renderer.start();
+        }
+        if (getTime() < endTime) {
+            if (period > 0) {
+                runPhase();
+            }
+            else if (periodWindow > 0 && !hasGenerationHook()) {
+                runSegments();
+            }
+            else {
+                runTo(endTime - epoch);
+            }
+
+            // Generations the run cut short repeat the state it ended with
+            epoch = endTime - current;
+        }
+        if (renderer != null) {
+            renderer.stop();
+        }
+    }
+
+    /**
+     * Continue from the current state up to generation time, without
+     * rebuilding the engine
+     */
+    public void runUntil(int time) {
+        if (time < getTime()) {
+            throw new IllegalArgumentException("generation " + time + " is behind " + getTime());
+        }
+        endTime = time;
+        execute();
+    }
+
+    /**
+     * Continue from the current state for n more generations
+     */
+    public void advance(int n) {
+        runUntil(getTime() + n);
+    }
+
+    /**
+     * Generation of the current state
+     */
+    public int getTime() {
+        return epoch + current;
+    }
+
+    /**
+     * Number of generations computed since the engine was built or reset,
+     * fewer than getTime() when cycles were skipped, more when a cycle was
+     * searched for by running generations again
+     */
+    public long getComputed() {
+        return computed;
+    }
+
+    /**
+     * Run from the current generation up to internal generation time, or to
+     * the generation onGeneration() ended the run at
+     */
+    private void runTo(int time) {
+        maxTime = time;
+        run();
+        computed += maxTime - current;
+        current = maxTime;
+    }
+
+    /**
+     * In a cycle only the phase of the end matters: run to the generation
+     * of the cycle with the state of endTime, behind or ahead of it
+     */
+    private void runPhase() {
+        int phase = Math.floorMod(endTime - getTime(), period);
+        if (phase > 0) {
+            runTo(current + phase);
+        }
+    }
+
+    /**
+     * Whether the engine calls onGeneration() for every generation it completes
+     */
+    protected boolean hasGenerationHook() {
+        return false;
+    }
+
+    /**
+     * Mix the bits of a key, the finalizer of SplitMix64. Hashes of a
+     * generation are sums of mixed keys of live cells or words, so that
+     * threads add up their parts in any order.
+     */
+    static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+
+    /**
+     * Mix the bits of a key with the finalizer of MurmurHash3, for a second
+     * hash of a generation independent of the one of mix()
+     */
+    static long remix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Record both hashes of generation time and return how many generations
+     * back they were both seen within the window, 0 if not
+     */
+    private int findRepeat(int time, long hash, long check) {
+        if (hashes == null) {
+            hashes = new long[periodWindow];
+            checks = new long[periodWindow];
+            hashTimes = new int[periodWindow];
+            Arrays.fill(hashTimes, Integer.MIN_VALUE);
+        }
+        for (int d = 1; d <= periodWindow && d <= time; ++d) {
+            int slot = (time - d) % periodWindow;
+            if (hashTimes[slot] == time - d && hashes[slot] == hash && checks[slot] == check) {
+                return d;
+            }
+        }
+        hashes[time % periodWindow] = hash;
+        checks[time % periodWindow] = check;
+        hashTimes[time % periodWindow] = time;
+        return 0;
+    }
+
+    /**
+     * Generation hook: record the hashes of internal generation time and,
+     * when they equal those of one of the last periodWindow generations, end
+     * the run early. The first repeat is one period after the cycle starts.
+     * It ends no sooner than generation min, at the generation with the state
+     * maxTime would have had. Only one generation at a time may be recorded,
+     * and the run must not have passed min yet.
+     */
+    protected void onGeneration(int time, long hash, long check, int min) {
+        if (periodWindow <= 0 || period > 0) {
+            return;
+        }
+        int d = findRepeat(time, hash, check);
+        if (d > 0) {
+            period = d;
+            stableTime = epoch + time - d;
+            int from = Math.max(time, min);
+            if (from < maxTime) {
+                maxTime -= (maxTime - from) / d * d;
+            }
+        }
+    }
+
+    /**
+     * Detection for engines without a generation hook: run segments of
+     * periodWindow generations and compare the snapshot at the end of each
+     * with those of the last periodWindow segments. A cycle is found up to
+     * periodWindow segments after it starts, with a multiple of its period.
+     */
+    private void runSegments() {
+        if (segments == null) {
+            segments = new ArrayDeque<>();
+        }
+        if (segments.isEmpty() && current % periodWindow == 0) {
+            segments.add(getSnapshot());
+        }
+        while (period == 0 && getTime() < endTime) {
+            runTo(Math.min(endTime - epoch, (current / periodWindow + 1) * periodWindow));
+            if (current % periodWindow == 0) {
+                Checkpoint last = getSnapshot();
+                Checkpoint[] kept = segments.toArray(new Checkpoint[segments.size()]);
+                for (int i = kept.length - 1; i >= 0 && i >= kept.length - periodWindow; --i) {
+                    if (kept[i].sameState(last)) {
+                        findCycle(kept[Math.max(i - 1, 0)], kept[i], last);
+                        break;
+                    }
+                }
+                segments.add(last);
+                if (segments.size() > periodWindow + 1) {
+                    segments.removeFirst();
+                }
+            }
+        }
+        if (period > 0) {
+            segments = null;
+            runPhase();
+        }
+    }
+
+    /**
+     * The grid is the same at last as at match, so the least period divides
+     * their distance: try its divisors from last on. The grid did not repeat
+     * at the segment before match, so the cycle starts after from: run again
+     * from there until a generation repeats the one a period before.
+     */
+    private void findCycle(Checkpoint from, Checkpoint match, Checkpoint last) {
+        int distance = last.getTime() - match.getTime();
+        int p = distance;
+        for (int q = 1; q < distance; ++q) {
+            if (distance % q == 0) {
+                runTo(last.getTime() + q - epoch);
+                if (getSnapshot().sameState(last)) {
+                    p = q;
+                    break;
+                }
+            }
+        }
+
+        setState(from.getState());
+        epoch = from.getTime() - T0;
+        current = T0;
+        Checkpoint[] seen = new Checkpoint[match.getTime() - from.getTime() + 1];
+        for (;;) {
+            Checkpoint cp = getSnapshot();
+            int u = cp.getTime() - from.getTime();
+            if (u >= p && u - p < seen.length && cp.sameState(seen[u - p])) {
+                break;
+            }
+            if (u < seen.length) {
+                seen[u] = cp;
+            }
+            runTo(current + 1);
+        }
+        period = p;
+        stableTime = getTime() - p;
+    }
+
+    /**
+     * Period of the cycle the grid has settled into, 0 if none has been found
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Generation from which the grid repeats itself, valid when getPeriod() is not 0
+     */
+    public int getStableTime() {
+        return stableTime;
+    }
+
+    /**
+     * Overwrite the state of every cell and rewind the engine to generation
+     * T0, keeping the cells, their wiring and whatever else it allocated
+     */
+    protected abstract void setState(int[] s);
+
+    /**
+     * Start over from state s at generation 0, up to the same generation as before
+     */
+    public void reset(int[] s) {
+        if (s.length != (long)Width * Height) {
+            throw new IllegalArgumentException("state of " + s.length + " cells for a grid of " + Width + "x" + Height);
+        }
+        setState(s);
+        epoch = 0;
+        current = T0;
+        maxTime = endTime;
+        computed = 0;
+        hashes = null;
+        segments = null;
+        period = 0;
+        stableTime = 0;
+    }
+
+    /**
+     * Start over from a pattern centered in the grid, with the rule of the pattern
+     */
+    public void reset(RLE rle) {
+        if (rle.getW() > Width || rle.getH() > Height) {
+            throw new IllegalArgumentException("pattern of " + rle.getW() + "x" + rle.getH() + " does not fit a grid of " + Width + "x" + Height);
         }
+        setRule(rle.getRule());
+        reset(toState(rle, Width, Height, nThreads));
+    }
+
+    /**
+     * Make a cell of generation T0 alive, before the first run; engines
+     * constructed without initial state start with every cell dead
+     */
+    protected abstract void setAlive(int row, int col);
+
+    public void setRule(Rule r) {
+        rule = r;
+
+        // A cycle under another rule is not one under this rule
+        hashes = null;
+        segments = null;
+        period = 0;
+        stableTime = 0;
+    }
+
+    public Rule getRule() {
+        return rule;
     }
 
     protected Life(int w, int h, int t, int p, boolean v) {
         Width = w;
         Height = h;
         maxTime = T0 + t;
+        endTime = T0 + t;
         nThreads = p;
         vis = v;
+    }
+
+    /**
+     * Whether the engine writes a checkpoint every checkpointInterval
+     * generations while checkpointFile is set. Engines whose threads are
+     * generations apart have no generation to write without stopping them.
+     */
+    protected boolean takesCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Whether internal generation time is due for a checkpoint: every
+     * checkpointInterval generations, unless the previous checkpoint is
+     * still being written. Skipping rather than queuing checkpoints keeps
+     * their cost a bounded fraction of the run time.
+     */
+    protected boolean isCheckpointDue(int time) {
+        return checkpointFile != null && checkpointInterval > 0 && time < maxTime &&
+                (epoch + time) % checkpointInterval == 0 && (writer == null || !writer.isAlive());
+    }
+
+    /**
+     * Current state through getState(), valid only while no cell is being updated
+     */
+    protected Checkpoint getCheckpoint(int time) {
+        Checkpoint cp = new Checkpoint(Width, Height, epoch + time, rule);
+        for (int r = 0; r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                cp.setState(c, r, getState(r, c));
+            }
+        }
+        return cp;
+    }
+
+    /**
+     * Write a checkpoint in the background
+     */
+    protected void saveCheckpoint(Checkpoint cp) {
+        writer = new Thread(() -> cp.write(checkpointFile));
+        writer.start();
+    }
 
-        // Initialize visualization
-        if (vis) {
-            BufferedImage img = new BufferedImage(Width, Height, BufferedImage.TYPE_INT_RGB);
-            imgData = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    /**
+     * Wait for the last checkpoint to be written
+     */
+    protected void awaitCheckpoint() {
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+        }
+        catch (InterruptedException ie) {
+            ie.printStackTrace();
+        }
+    }
+
+    /**
+     * Contiguous range of indices [from, to) processed by one thread
+     */
+    protected interface Range {
+        void run(int from, int to);
+    }
 
-            JFrame frame = new JFrame() {
-                public void paint(Graphics g) {
-                    g.drawImage(img, 0, 0, getWidth(), getHeight(), null);
+    /**
+     * Split [0, size) into par contiguous ranges processed concurrently. As
+     * long as every index is written by its own range only, the result is the
+     * same as that of a serial loop. Small sizes stay in the calling thread.
+     */
+    protected static void parallel(int par, int size, Range range) {
+        int n = Math.min(par, size / MIN_RANGE);
+        if (n <= 1) {
+            range.run(0, size);
+            return;
+        }
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] threads = new Thread[n];
+        for (int t = 0; t < threads.length; ++t) {
+            int from = (int)((long)size * t / n);
+            int to = (int)((long)size * (t + 1) / n);
+            threads[t] = new Thread(() -> {
+                try {
+                    range.run(from, to);
                 }
-            };
-            frame.setSize(Width, Height);
-            frame.addWindowListener(new WindowAdapter() {
-                public void windowClosing(WindowEvent e) {
-                    System.exit(0);
+                catch (RuntimeException | Error e) {
+                    error.compareAndSet(null, e);
                 }
             });
-            frame.setVisible(true);
+            threads[t].start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        catch (InterruptedException ie) {
+            ie.printStackTrace();
+        }
+
+        Throwable e = error.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException)e;
+        }
+        if (e != null) {
+            throw (Error)e;
+        }
+    }
+
+    /**
+     * Run task(id) for every id below n, all at once on threads of the
+     * engine, and wait for them. The threads are daemons that stay around for
+     * the next run, so an engine running many short segments does not pay
+     * for starting them every time.
+     */
+    protected void runWorkers(int n, IntConsumer task) {
+        if (workers == null) {
+            workers = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Future<?>[] tasks = new Future<?>[n];
+        for (int t = 0; t < n; ++t) {
+            final int id = t;
+            tasks[t] = workers.submit(() -> task.accept(id));
+        }
+
+        Throwable e = null;
+        try {
+            for (Future<?> f : tasks) {
+                try {
+                    f.get();
+                }
+                catch (ExecutionException ex) {
+                    e = e != null ? e : ex.getCause();
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            ie.printStackTrace();
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException)e;
+        }
+        if (e != null) {
+            throw (Error)e;
+        }
+    }
 
-            Timer timer = new Timer(40, (e) -> frame.repaint());
-            timer.start();
+    /**
+     * Let the threads the engine keeps between runs go. A later run starts
+     * new ones.
+     */
+    public void close() {
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+    }
+
+    /**
+     * Cells of a grid with the pattern centered, rows of a pattern held in
+     * memory copied by par threads
+     */
+    private static int[] toState(RLE rle, int width, int height, int par)
+    {
+        int w = rle.getW();
+        int x0 = (width - w) / 2;
+        int y0 = (height - rle.getH()) / 2;
+        if ((long)width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid of " + width + "x" + height + " does not fit the heap");
+        }
+        int[] state = new int[width * height];
+        if (rle.isDecoded() && w > 0) {
+            int[] src = rle.getState();
+            parallel(par, src.length, (from, to) -> {
+                // Rows starting in the range
+                for (int y = (from + w - 1) / w; y * w < to; ++y) {
+                    System.arraycopy(src, y * w, state, (y + y0) * width + x0, w);
+                }
+            });
         }
+        else {
+            rle.forEachLive((x, y) -> state[(y + y0) * width + x + x0] = STATE1);
+        }
+        return state;
     }
 
     public static Life fromRLE(RLE rle, Type type, int width, int height, int time, int par, boolean vis)
@@ -96,15 +636,38 @@ public abstract class Life {
         // Re-center
         width = Math.max(width, rle.getW());
         height = Math.max(height, rle.getH());
-        int[] state = new int[width * height];
         int x0 = (width - rle.getW()) / 2;
         int y0 = (height - rle.getH()) / 2;
-        for (int x = 0; x < rle.getW(); ++x) {
-            for (int y = 0; y < rle.getH(); ++y) {
-                state[(y + y0) * width + x + x0] = rle.getState(x, y);
-            }
+
+        // Live cells go straight into the storage of the engine, never through a state of every cell
+        Life res = create(type, width, height, time, par, vis, null);
+        res.setRule(rle.getRule());
+        rle.forEachLive((x, y) -> res.setAlive(y + y0, x + x0));
+        return res;
+    }
+
+    public static Life fromRLE(RLE rle, Type type, int time, int par, boolean vis)
+    {
+        return fromRLE(rle, type, rle.getW(), rle.getH(), time, par, vis);
+    }
+
+    /**
+     * Continue from a checkpoint up to generation time
+     */
+    public static Life fromCheckpoint(Checkpoint cp, Type type, int time, int par, boolean vis)
+    {
+        if (time < cp.getTime()) {
+            throw new IllegalArgumentException("checkpoint at generation " + cp.getTime() + " is past " + time);
         }
+        Life res = create(type, cp.getW(), cp.getH(), time - cp.getTime(), par, vis, cp.getState());
+        res.epoch = cp.getTime();
+        res.endTime = time;
+        res.setRule(cp.getRule());
+        return res;
+    }
 
+    private static Life create(Type type, int width, int height, int time, int par, boolean vis, int[] state)
+    {
         Life res = null;
         switch (type) {
             case ORDINARY:
@@ -116,6 +679,42 @@ public abstract class Life {
             case NOWAIT:
                 res = new NoWaitLife(width, height, time, par, vis, state);
                 break;
+            case NOSYNC_FLAT:
+                res = new FlatNoSyncLife(width, height, time, par, vis, state);
+                break;
+            case BITWISE:
+                res = new BitwiseLife(width, height, time, par, vis, state);
+                break;
+            case NOSYNC_TILED:
+                res = new TiledNoSyncLife(width, height, time, par, vis, state);
+                break;
+            case NOWAIT_BLOCK:
+                res = new BlockNoWaitLife(width, height, time, par, vis, state);
+                break;
+            case ORDINARY_P2P:
+                res = new OrdinaryLife(width, height, time, par, vis, state, true);
+                break;
+            case HASHLIFE:
+                res = new HashLife(width, height, time, par, vis, state);
+                break;
+            case BITWISE_ACTIVE:
+                res = new BitwiseLife(width, height, time, par, vis, state, true);
+                break;
+            case UNBOUNDED:
+                res = new UnboundedLife(width, height, time, par, vis, state);
+                break;
+            case ORDINARY_OFFHEAP:
+                res = new OrdinaryLife(width, height, time, par, vis, state, false, true);
+                break;
+            case NOSYNC_OFFHEAP:
+                res = new FlatNoSyncLife(width, height, time, par, vis, state, true);
+                break;
+            case VECTOR:
+                res = new VectorLife(width, height, time, par, vis, state);
+                break;
+            case CHANNEL:
+                res = new ChannelLife(width, height, time, par, vis, state);
+                break;
             default:
                 System.err.println("ERROR: unknown type: " + type);
                 System.exit(1);
@@ -123,9 +722,30 @@ public abstract class Life {
         return res;
     }
 
-    public static Life fromRLE(RLE rle, Type type, int time, int par, boolean vis)
-    {
-        return fromRLE(rle, type, rle.getW(), rle.getH(), time, par, vis);
+    /**
+     * Packed state of the grid, much cheaper to keep and compare than getResult()
+     */
+    public Checkpoint getSnapshot() {
+        return getCheckpoint(current);
+    }
+
+    /**
+     * Population and bounding box of the current generation. Engines that
+     * tally them while applying the rule return the census of the last
+     * generation they completed, or of the last generation of a run when
+     * threads are generations apart; others scan the grid, which is
+     * consistent only while no cell is being updated.
+     */
+    public Census getCensus() {
+        long[] tally = Census.newTally();
+        for (int r = 0; r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                if (getState(r, c) != STATE0) {
+                    Census.add(tally, r, c);
+                }
+            }
+        }
+        return new Census(getTime(), tally);
     }
 
     public String[] getResult() {
@@ -149,6 +769,9 @@ public abstract class Life {
         int parallelism = Runtime.getRuntime().availableProcessors();
         boolean vis = true;
         RLE rle = null;
+        String resumeFile = null;
+        String outFile = null;
+        Rule rule = null;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-w")) {
@@ -163,9 +786,39 @@ public abstract class Life {
             else if (args[i].equals("-t")) {
                 time = Integer.parseInt(args[++i]);
             }
+            else if (args[i].equals("-b")) {
+                tileSize = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-m")) {
+                mapFile = args[++i];
+            }
+            else if (args[i].equals("-c")) {
+                checkpointFile = args[++i];
+            }
+            else if (args[i].equals("-k")) {
+                checkpointInterval = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-e")) {
+                periodWindow = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-r")) {
+                resumeFile = args[++i];
+            }
+            else if (args[i].equals("-o")) {
+                outFile = args[++i];
+            }
+            else if (args[i].equals("-R")) {
+                rule = Rule.parse(args[++i]);
+            }
+            else if (args[i].equals("-f")) {
+                frameDir = args[++i];
+            }
             else if (args[i].equals("-T")) {
                 type = Type.valueOf(args[++i]);
             }
+            else if (args[i].equals("-a")) {
+                affinity = true;
+            }
             else if (args[i].equals("-novis")) {
                 vis = false;
             }
@@ -181,15 +834,46 @@ public abstract class Life {
             rle = RLE.getAcorn();
         }
 
-        Life lf = fromRLE(rle, type, width, height, time, parallelism, vis);
+        Life lf = resumeFile != null ?
+                fromCheckpoint(Checkpoint.read(resumeFile), type, time, parallelism, vis) :
+                fromRLE(rle, type, width, height, time, parallelism, vis);
+        if (checkpointFile != null && !lf.takesCheckpoints()) {
+            System.err.println("ERROR: " + type + " does not write checkpoints, -c only works with " +
+                    "NOSYNC, ORDINARY, ORDINARY_OFFHEAP, BITWISE, BITWISE_ACTIVE and VECTOR");
+            return;
+        }
+        if (rule != null) {
+            lf.setRule(rule);
+        }
         long start = System.currentTimeMillis();
         lf.execute();
         long end = System.currentTimeMillis();
+        lf.close();
 
-        String[] state = lf.getResult();
-        for (String str : state) {
-            System.out.println(str);
+        if (outFile != null) {
+            try (Writer out = new BufferedWriter(new FileWriter(outFile))) {
+                RLE.write(lf, out);
+            }
+            catch (IOException e) {
+                System.err.println("ERROR: cannot write file: " + outFile);
+            }
+            System.out.println(lf.getSnapshot());
+        }
+        else {
+            String[] state = lf.getResult();
+            for (String str : state) {
+                System.out.println(str);
+            }
+        }
+        System.out.println("Score: " + (1000l * lf.getComputed() * lf.Width * lf.Height / (end-start)) + " ops/sec");
+        if (lf.getPeriod() > 0) {
+            System.out.println("Period: " + lf.getPeriod() + " from generation " + lf.getStableTime());
+        }
+        if (lf instanceof NoSyncLife) {
+            System.out.println(((NoSyncLife)lf).getStats());
+        }
+        if (lf instanceof ChannelLife) {
+            System.out.println("Waits: " + ((ChannelLife)lf).getWaits() + (ChannelLife.isVirtual() ? " (virtual threads)" : ""));
         }
-        System.out.println("Score: " + (1000l * time * lf.Width * lf.Height / (end-start)) + " ops/sec");
     }
 }
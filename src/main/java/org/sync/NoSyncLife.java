@@ -16,16 +16,103 @@
 
 package org.sync;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Asynchronous parallel wait-free unsynchronized implementation of Life
  *
+ * Checkpoints are taken without stopping the workers. A value stamped with
+ * generation t is the correct state of its cell at t, no matter which thread
+ * wrote it or how late, so a generation ahead of all cells is announced and
+ * each cell's value for it is recorded as it is computed. A cell that was
+ * already past the announced generation still has the value in its slot
+ * until it computes two more generations.
+ *
+ * Every thread counts how often it takes each path of the protocol in its
+ * own array; the totals are reported by getStats() and, while the engine
+ * runs, by the MXBean org.sync:type=NoSyncLife,id=n where n numbers the
+ * engines created in the JVM.
+ *
+ * Every thread has a home region, a stripe of whole rows where it starts.
+ * Threads normally wander freely, sweeping past the end of their region and
+ * jumping to lagging neighbors anywhere. With affinity a thread sweeps its
+ * region in a loop and returns to it after every trip out, and it only jumps
+ * out after a row worth of cells made no progress, so that cache lines
+ * mostly stay with one core. Progress made away from home is counted in
+ * both modes.
+ *
+ * A thread that finds a cell at maxTime checks only the row of the cell and,
+ * when the whole row is done, marks it with a CAS and counts it: threads stop
+ * as soon as the count covers all rows instead of scanning the grid. A late
+ * stale write may still take a cell of a marked row back; such cells are
+ * found in one pass once all threads stopped and finished serially.
+ *
+ * The thread that marks a row also adds its live cells to its own tally, so
+ * the census of maxTime is ready when the run ends without another pass.
+ * Rows with a cell taken back while they were counted are left to the end
+ * of the run.
+ *
  * https://github.com/OlegMazurov/Koyaanisqatsi
  *
  */
 
 public class NoSyncLife extends Life {
 
+    // Paths of the protocol
+    static final int UPDATE = 0;
+    static final int RECOMPUTE = 1;
+    static final int PARITY = 2;
+    static final int REPAIR = 3;
+    static final int JUMP = 4;
+    static final int SCAN = 5;
+    static final int AWAY = 6;
+    private static final int STATS = 7;
+    // Mark of a row done and counted in a tally
+    private static final int COUNTED = 2;
+    // Keep counters of different threads on different cache lines
+    private static final int PAD = 8;
+    // Engines created so far, to name their MXBeans apart
+    private static final AtomicInteger engines = new AtomicInteger();
+
     private final Cell[] cells;
+    private final long[][] stats;
+    private final int serial = engines.incrementAndGet();
+    /**
+     * Generation the checkpointer records, T0 when none: no cell computes T0
+     */
+    private volatile int snapTime = T0;
+    private AtomicIntegerArray snapshot;
+    private AtomicIntegerArray rowDone;
+    private final AtomicInteger rowsDone = new AtomicInteger();
+    private final long[][] tallies;
+    private volatile Census census;
+
+    /**
+     * Home region of a thread and where to resume it after a trip out
+     */
+    private static final class Region {
+        final int min;
+        final int max;
+        int resume;
+        int idle;
+
+        Region(int lo, int hi) {
+            min = lo;
+            max = hi;
+            resume = lo;
+        }
+
+        boolean contains(Cell cell) {
+            return cell.idx >= min && cell.idx < max;
+        }
+    }
 
     private static class Cell {
         int idx;
@@ -35,10 +122,14 @@ public class NoSyncLife extends Life {
         public Cell(int i, int s) {
             idx = i;
             state = new int[3];
+            neighbors = new Cell[8];
+            init(s);
+        }
+
+        void init(int s) {
             int off = T0 & 0x1;
             state[1 - off] = (T0 - 1) << 1;
             state[off] = (T0 << 1) | s;
-            neighbors = new Cell[8];
         }
     }
 
@@ -47,7 +138,72 @@ public class NoSyncLife extends Life {
         return Math.max(cell.state[0], cell.state[1]) & 0x1;
     }
 
-    private static class PseudoRandom {
+    /**
+     * A cell coming alive flips the parity of itself and of every neighbor
+     */
+    protected void setAlive(int row, int col) {
+        int off = T0 & 0x1;
+        Cell cell = cells[row * Width + col];
+        if ((cell.state[off] & 0x1) == 0) {
+            cell.state[off] |= STATE1;
+            cell.state[2] ^= 0x1;
+            for (Cell neighbor : cell.neighbors) {
+                neighbor.state[2] ^= 0x1;
+            }
+        }
+    }
+
+    /**
+     * Protocol counters summed over all threads, sampled while the engine runs
+     */
+    public interface StatsMXBean {
+        /** Rule applications */
+        long getUpdates();
+        /** Rule applications to a cell whose value was overwritten by a delayed thread */
+        long getRecomputes();
+        /** Parity updates */
+        long getParityUpdates();
+        /** Values restored from parity */
+        long getRepairs();
+        /** Moves to a cell that is behind */
+        long getJumps();
+        /** Cells checked for completion */
+        long getScans();
+        /** Updates and parity updates by a thread out of its home region */
+        long getAwayUpdates();
+    }
+
+    public class Stats implements StatsMXBean {
+        public long get(int path) {
+            long sum = 0;
+            for (long[] stat : stats) {
+                if (stat != null) {
+                    sum += stat[path];
+                }
+            }
+            return sum;
+        }
+
+        public long getUpdates() { return get(UPDATE); }
+        public long getRecomputes() { return get(RECOMPUTE); }
+        public long getParityUpdates() { return get(PARITY); }
+        public long getRepairs() { return get(REPAIR); }
+        public long getJumps() { return get(JUMP); }
+        public long getScans() { return get(SCAN); }
+        public long getAwayUpdates() { return get(AWAY); }
+
+        public String toString() {
+            return "updates: " + getUpdates() + ", recomputes: " + getRecomputes() +
+                    ", parity updates: " + getParityUpdates() + ", repairs: " + getRepairs() +
+                    ", jumps: " + getJumps() + ", scans: " + getScans() + ", away: " + getAwayUpdates();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats();
+    }
+
+    static class PseudoRandom {
         static final int FACTOR1 = 2999;
         static final int FACTOR2 = 7901;
         int val;
@@ -63,13 +219,62 @@ public class NoSyncLife extends Life {
         }
     }
 
-    private void runUnsync(int id)
+    /**
+     * Next cell after progress at cur
+     */
+    private Cell sweep(Cell cur, Region home, long[] stat) {
+        int idx = cur.idx + 1;
+        if (!home.contains(cur)) {
+            ++stat[AWAY];
+            if (affinity) {
+                return cells[home.resume];
+            }
+        }
+        else if (affinity) {
+            home.idle = 0;
+            return cells[idx == home.max ? home.min : idx];
+        }
+        return cells[idx == cells.length ? 0 : idx];
+    }
+
+    /**
+     * Next cell when cur cannot progress because of the neighbor to
+     */
+    private Cell jump(Cell cur, Cell to, Region home, long[] stat) {
+        if (!home.contains(cur) || !affinity) {
+            ++stat[JUMP];
+            return to;
+        }
+        int idx = cur.idx + 1;
+        idx = idx == home.max ? home.min : idx;
+        // Stay home until a row worth of cells made no progress
+        if (!home.contains(to)) {
+            if (++home.idle < Width) {
+                return cells[idx];
+            }
+            home.idle = 0;
+            home.resume = idx;
+        }
+        ++stat[JUMP];
+        return to;
+    }
+
+    private void runUnsync(int id, int start)
     {
         PseudoRandom rnd = new PseudoRandom(id);
+        int[] table = rule.table;
         Cell[] next = new Cell[16];
+        long[] stat = stats[id] != null ? stats[id] : new long[STATS + PAD];
+        stats[id] = stat;
+
+        Region home = new Region(cells.length * id / nThreads, cells.length * (id + 1) / nThreads);
+        Cell cur = cells[start];
 
-        // Start apart
-        Cell cur = cells[cells.length * id / nThreads];
+        // The generation to record is announced ahead of any cell reaching it,
+        // so a copy refreshed every row worth of updates sees it in time
+        boolean snapping = snapshot.length() > 0;
+        int snap = snapping ? snapTime : T0;
+        int refresh = Width;
 
         mainLoop:
         for (;;) {
@@ -97,8 +302,9 @@ public class NoSyncLife extends Life {
                     }
                 }
                 if (cnt == 0) {
+                    ++stat[PARITY];
                     cur.state[2] = V;
-                    cur = cells[cur.idx + 1 == cells.length ? 0 : cur.idx + 1];
+                    cur = sweep(cur, home, stat);
                     continue mainLoop;
                 }
 
@@ -116,6 +322,7 @@ public class NoSyncLife extends Life {
                         }
                     }
                     if (cnt == 0) {
+                        ++stat[PARITY];
                         cur.state[2] = V;
                         continue mainLoop;
                     }
@@ -134,6 +341,7 @@ public class NoSyncLife extends Life {
                         }
                     }
                     if (cnt == 1) {
+                        ++stat[REPAIR];
                         next[0].state[off] = V;
                         continue mainLoop;
                     }
@@ -153,11 +361,12 @@ public class NoSyncLife extends Life {
                         }
                     }
                     if (cnt == 1) {
+                        ++stat[REPAIR];
                         next[0].state[off] = V;
                         continue mainLoop;
                     }
                 }
-                cur = next[rnd.nextInt(cnt)];
+                cur = jump(cur, next[rnd.nextInt(cnt)], home, stat);
             }
             else if (TS2 == TS1) {
                 int off = TS2 & 0x1;
@@ -176,6 +385,7 @@ public class NoSyncLife extends Life {
                     }
                 }
                 if (cnt == 1) {
+                    ++stat[REPAIR];
                     next[0].state[off] = V;
                     sum += V & 0x1;
                     cnt = 0;
@@ -196,32 +406,55 @@ public class NoSyncLife extends Life {
                     }
                 }
                 if (cnt2 > 0) {
-                    cur = rnext != null ? rnext : next[rnd.nextInt(cnt)];
+                    cur = jump(cur, rnext != null ? rnext : next[rnd.nextInt(cnt)], home, stat);
                     continue mainLoop;
                 }
 
                 // Are we done?
                 if (TS1 == maxTime) {
-                    int idx = cur.idx;
-                    for (int n = 0; n < cells.length; ++n) {
-                        if (++idx == cells.length) idx = 0;
-                        cur = cells[idx];
-                        if (Math.max(cur.state[0], cur.state[1]) >> 1 != maxTime) continue mainLoop;
+                    if (rowsDone.get() == Height) {
+                        return;
                     }
-                    return;
+                    int row = cur.idx / Width;
+                    if (rowDone.get(row) == 0) {
+                        int row0 = row * Width;
+                        int idx = cur.idx;
+                        for (int n = 0; n < Width; ++n) {
+                            if (++idx == row0 + Width) idx = row0;
+                            cur = cells[idx];
+                            ++stat[SCAN];
+                            if (Math.max(cur.state[0], cur.state[1]) >> 1 != maxTime) continue mainLoop;
+                        }
+                        if (rowDone.compareAndSet(row, 0, 1)) {
+                            if (tallyRow(row, tallies[id])) {
+                                rowDone.set(row, COUNTED);
+                            }
+                            if (rowsDone.incrementAndGet() == Height) {
+                                return;
+                            }
+                        }
+                    }
+
+                    // Move on to a row not known to be done
+                    for (int n = 0; n < Height && rowDone.get(row) != 0; ++n) {
+                        if (++row == Height) row = 0;
+                    }
+                    cur = cells[row * Width];
+                    continue mainLoop;
                 }
 
-                // Apply the rule of Life
-                int nextState = sum < 2 ? STATE0 : sum == 2 ? (S1 & 0x1) : sum == 3 ? STATE1 : STATE0;
+                // Apply the rule
+                ++stat[UPDATE];
+                int nextState = table[(sum << 1) | (S1 & 0x1)];
                 cur.state[1 - off] = ((TS1 + 1) << 1) | nextState;
-
-                // Color live cells according to the current thread id
-                setColor(cur.idx, nextState == STATE0 ? 0 : id + 1);
-                // Color all cells according to the current thread id
-                //setColor(cur.idx, id + 1);
-                // Color all cells according to the current generation
-                //setColor(cur.idx, TS1);
-                cur = cells[cur.idx + 1 == cells.length ? 0 : cur.idx + 1];
+                if (TS1 + 1 == snap) {
+                    snapshot.set(cur.idx, ((TS1 + 1) << 1) | nextState);
+                }
+                else if (snapping && --refresh == 0) {
+                    snap = snapTime;
+                    refresh = Width;
+                }
+                cur = sweep(cur, home, stat);
             }
             else {
                 int off = TS2 & 0x1;
@@ -238,6 +471,7 @@ public class NoSyncLife extends Life {
                     }
                 }
                 if (cnt == 0) {
+                    ++stat[REPAIR];
                     cur.state[off] = V;
                     continue mainLoop;
                 }
@@ -254,31 +488,189 @@ public class NoSyncLife extends Life {
                     }
                 }
 
-                // Apply the rule of Life
-                int nextState = sum < 2 ? STATE0 : sum == 2 ? (S1 & 0x1) : sum == 3 ? STATE1 : STATE0;
+                // Apply the rule again: the value was overwritten by a delayed thread
+                ++stat[RECOMPUTE];
+                int nextState = table[(sum << 1) | (S1 & 0x1)];
                 cur.state[1 - off] = ((TS1 + 1) << 1) | nextState;
+                if (TS1 + 1 == snap) {
+                    snapshot.set(cur.idx, ((TS1 + 1) << 1) | nextState);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the live cells of a row done at maxTime to a tally, unless one of
+     * them has been taken back meanwhile
+     */
+    private boolean tallyRow(int row, long[] tally) {
+        int off = maxTime & 0x1;
+        int n = 0;
+        int first = 0;
+        int last = 0;
+        for (int c = 0; c < Width; ++c) {
+            int val = cells[row * Width + c].state[off];
+            if ((val >> 1) != maxTime) {
+                return false;
+            }
+            if ((val & 0x1) != 0) {
+                if (n++ == 0) {
+                    first = c;
+                }
+                last = c;
+            }
+        }
+        if (n > 0) {
+            Census.add(tally, row, first, last, n);
+        }
+        return true;
+    }
+
+    /**
+     * Cells record their value of the generation of the checkpoint as they
+     * pass it
+     */
+    protected boolean takesCheckpoints() {
+        return true;
+    }
+
+    /**
+     * Census of the generation the last run ended at, or of the one the
+     * running one started from
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    /**
+     * Value of a cell at generation time, or -1 if it is not computed yet,
+     * or -2 if it has already been overwritten without being recorded
+     */
+    private int getSnapshot(int idx, int time) {
+        int val = snapshot.get(idx);
+        if ((val >> 1) == time) {
+            return val & 0x1;
+        }
+        Cell cell = cells[idx];
+        val = cell.state[time & 0x1];
+        if ((val >> 1) == time) {
+            return val & 0x1;
+        }
+        if ((val >> 1) < time) {
+            return -1;
+        }
+        val = snapshot.get(idx);
+        return (val >> 1) == time ? val & 0x1 : -2;
+    }
+
+    /**
+     * Record generation time of all cells, or null if some value was lost
+     */
+    private Checkpoint capture(int time) {
+        snapTime = time;
+        Checkpoint cp = new Checkpoint(Width, Height, epoch + time, rule);
+        for (int idx = 0; idx < cells.length; ++idx) {
+            int s;
+            while ((s = getSnapshot(idx, time)) == -1) {
+                LockSupport.parkNanos(this, 100000);
+            }
+            if (s < 0) {
+                return null;
+            }
+            cp.setState(idx % Width, idx / Width, s);
+        }
+        return cp;
+    }
+
+    private void runCheckpoints()
+    {
+        for (;;) {
+            // Announce a generation no cell has reached yet
+            int ahead = T0;
+            for (Cell cell : cells) {
+                ahead = Math.max(ahead, Math.max(cell.state[0], cell.state[1]) >> 1);
+            }
+            int time = ahead + 1;
+            while (!isCheckpointDue(time)) {
+                if (++time >= maxTime) {
+                    return;
+                }
+            }
+
+            Checkpoint cp = capture(time);
+            snapTime = T0;
+            if (cp != null) {
+                saveCheckpoint(cp);
+                awaitCheckpoint();
             }
         }
     }
 
-    public void execute()
+    protected void run()
     {
-        // Run concurrently
-        Thread[] threads = new Thread[nThreads];
-        for (int t = 0; t < threads.length; ++t) {
-            final int id = t;
-            Thread thread = new Thread(() -> runUnsync(id));
-            threads[t] = thread;
-            thread.start();
+        snapshot = new AtomicIntegerArray(checkpointFile != null ? cells.length : 0);
+        snapTime = T0;
+        rowDone = new AtomicIntegerArray(Height);
+        rowsDone.set(0);
+        if (census == null) {
+            census = super.getCensus();
+        }
+        for (long[] tally : tallies) {
+            Census.clear(tally);
+        }
+
+        // Run concurrently, starting apart, with one more worker for checkpoints
+        ObjectName name = register();
+        runWorkers(checkpointFile != null ? nThreads + 1 : nThreads, id -> {
+            if (id < nThreads) {
+                runUnsync(id, cells.length * id / nThreads);
+            }
+            else {
+                runCheckpoints();
+            }
+        });
+
+        // Finish cells taken back by stale writes after their rows were done
+        for (int idx = 0; idx < cells.length; ++idx) {
+            Cell cell = cells[idx];
+            while (Math.max(cell.state[0], cell.state[1]) >> 1 != maxTime) {
+                runUnsync(0, idx);
+            }
+        }
+        for (int row = 0; row < Height; ++row) {
+            if (rowDone.get(row) != COUNTED) {
+                tallyRow(row, tallies[nThreads]);
+            }
+        }
+        census = new Census(epoch + maxTime, tallies);
+        unregister(name);
+    }
+
+    ObjectName register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.sync:type=NoSyncLife,id=" + serial);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(getStats(), name);
+            return name;
+        }
+        catch (JMException ex) {
+            ex.printStackTrace();
+            return null;
         }
+    }
 
+    void unregister(ObjectName name) {
         try {
-            for (Thread thread : threads) {
-                thread.join();
+            if (name != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
             }
         }
-        catch (InterruptedException ie) {
-            ie.printStackTrace();
+        catch (JMException ex) {
+            // Already gone
         }
     }
 
@@ -322,26 +714,61 @@ public class NoSyncLife extends Life {
         return r * Width + c;
     }
 
+    /**
+     * Parity of every cell with its neighbors at T0, gathered rather than
+     * scattered so that threads only write to cells of their own range
+     */
+    private void seedParity() {
+        int off = T0 & 0x1;
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                Cell cell = cells[idx];
+                int P = cell.state[off];
+                for (Cell neighbor : cell.neighbors) {
+                    P ^= neighbor.state[off];
+                }
+                cell.state[2] = P;
+            }
+        });
+    }
+
+    protected void setState(int[] s) {
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                cells[idx].init(s[idx] == 0 ? STATE0 : STATE1);
+            }
+        });
+        seedParity();
+        Arrays.fill(stats, null);
+        snapTime = T0;
+        census = null;
+    }
+
     public NoSyncLife(int w, int h, int t, int p, boolean v, int[] s)
     {
         super(w, h, t, p, v);
 
         // Initialize cells
-        cells = new Cell[Width * Height];
-        for (int idx = 0; idx < cells.length; ++idx) {
-            Cell cell = new Cell(idx, s[idx] == 0 ? STATE0 : STATE1);
-            cells[idx] = cell;
+        stats = new long[nThreads][];
+        tallies = new long[nThreads + 1][];
+        for (int id = 0; id < tallies.length; ++id) {
+            tallies[id] = Census.newTally();
         }
-        for (Cell cell : cells) {
-            int S = cell.state[T0 & 0x1];
-            cell.state[2] ^= S;
-            for (int n = 0; n < cell.neighbors.length; ++n) {
-                int nidx = getNeighbor(cell.idx, n);
-                Cell neighbor = cells[nidx];
-                cell.neighbors[n] = neighbor;
-                neighbor.state[2] ^= S;
+        cells = new Cell[Width * Height];
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                cells[idx] = new Cell(idx, s == null || s[idx] == 0 ? STATE0 : STATE1);
             }
-        }
+        });
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                Cell cell = cells[idx];
+                for (int n = 0; n < cell.neighbors.length; ++n) {
+                    cell.neighbors[n] = cells[getNeighbor(idx, n)];
+                }
+            }
+        });
+        seedParity();
     }
 
     public static void main(String[] args) {
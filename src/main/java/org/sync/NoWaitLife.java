@@ -16,15 +16,23 @@
 
 package org.sync;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 
 /**
  * Asynchronous parallel wait-free implementation of Life
  *
+ * A task completing the last generation counts its cell into the tally of
+ * the worker running it, the census of maxTime is ready when the run ends.
+ *
  * https://github.com/OlegMazurov/Koyaanisqatsi
  *
  */
@@ -33,6 +41,95 @@ public class NoWaitLife extends Life {
 
     private final Cell[] cells;
     private CountDownLatch finished;
+    private Generations generations;
+    private volatile Census census;
+    private Workers workers;
+    private ForkJoinPool pool;
+
+    /**
+     * Daemon workers of a pool, each with a padded tally of its own. The pool
+     * is kept from run to run, so tallies are cleared when a run starts, and
+     * those of workers the pool retired stay until then.
+     */
+    static final class Workers implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final List<long[]> tallies = new ArrayList<>();
+
+        public synchronized ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            Worker worker = new Worker(pool);
+            worker.setDaemon(true);
+            tallies.add(worker.tally);
+            return worker;
+        }
+
+        synchronized void clear() {
+            for (long[] tally : tallies) {
+                Census.clear(tally);
+            }
+        }
+
+        synchronized long[][] getTallies() {
+            return tallies.toArray(new long[tallies.size()][]);
+        }
+
+        ForkJoinPool newPool(int par) {
+            return new ForkJoinPool(par, this, (t,e) -> e.printStackTrace(), false);
+        }
+
+        /** Tally of the worker running the current task */
+        static long[] tally() {
+            return ((Worker) Thread.currentThread()).tally;
+        }
+    }
+
+    static final class Worker extends ForkJoinWorkerThread {
+        final long[] tally = Census.newTally();
+
+        Worker(ForkJoinPool pool) {
+            super(pool);
+        }
+    }
+
+    /**
+     * Both hashes of the generations in flight, by generation modulo the length
+     * of the ring, and the number of tasks of each still to complete. A task
+     * is at most one generation ahead of its neighbors, so while the last
+     * task of a generation holds its neighbors back, no task is more than
+     * the grid is wide or high in tasks ahead of it.
+     */
+    static final class Generations {
+        private final AtomicLongArray hashes;
+        private final AtomicLongArray checks;
+        private final AtomicIntegerArray counts;
+        private final int tasks;
+
+        Generations(int length, int n) {
+            hashes = new AtomicLongArray(length);
+            checks = new AtomicLongArray(length);
+            counts = new AtomicIntegerArray(length);
+            tasks = n;
+            for (int i = 0; i < length; ++i) {
+                counts.set(i, n);
+            }
+        }
+
+        /**
+         * Add a task of generation time with the hashes of its cells. The task
+         * completing the generation looks for a cycle before it forks anything.
+         */
+        void complete(Life life, int time, long hash, long check) {
+            int slot = time % counts.length();
+            if (hash != 0) {
+                hashes.addAndGet(slot, hash);
+                checks.addAndGet(slot, check);
+            }
+            if (counts.decrementAndGet(slot) == 0) {
+                long sum = hashes.getAndSet(slot, 0);
+                long checkSum = checks.getAndSet(slot, 0);
+                counts.set(slot, tasks);
+                life.onGeneration(time, sum, checkSum, time + counts.length());
+            }
+        }
+    }
 
     protected int getState(int row, int col) {
         Cell cell = cells[row * Width + col];
@@ -42,6 +139,10 @@ public class NoWaitLife extends Life {
         return cell.state;
     }
 
+    protected void setAlive(int row, int col) {
+        cells[row * Width + col].state = STATE1;
+    }
+
     private class Cell extends ForkJoinTask<Object>
     {
         private int idx;
@@ -64,7 +165,6 @@ public class NoWaitLife extends Life {
         protected void setRawResult(Object value) {}
 
         protected boolean exec() {
-            state = neighbors[0].state;
             time  = neighbors[0].time + 1;
             int sum = 0;
             for (int i = 1; i < neighbors.length; ++i) {
@@ -73,24 +173,19 @@ public class NoWaitLife extends Life {
                 }
             }
 
-            // Apply the rule of Life
-            if (sum < 2 || sum > 3) {
-                state = STATE0;
-            }
-            else if (sum == 3) {
-                state = STATE1;
-            }
-
-            // Color live cells according to the current thread id
-            setColor(idx, state == STATE0 ? 0 : (int)Thread.currentThread().getId());
-            // Color all cells according to the current thread id
-            //setColor(idx, (int)Thread.currentThread().getId())
-            // Color all cells according to the current generation
-            //setColor(idx, TS1);
+            // Apply the rule
+            state = rule.table[(sum << 1) | neighbors[0].state];
 
             reinitialize();
             count.set(neighbors.length);
+            if (generations != null) {
+                boolean alive = state != STATE0;
+                generations.complete(NoWaitLife.this, time, alive ? mix(idx) : 0, alive ? remix(idx) : 0);
+            }
             if (time == maxTime) {
+                if (state != STATE0) {
+                    Census.add(Workers.tally(), idx / Width, idx % Width);
+                }
                 finished.countDown();
             }
             else {
@@ -105,18 +200,37 @@ public class NoWaitLife extends Life {
         }
     }
 
-    public void execute()
+    protected boolean hasGenerationHook() {
+        return true;
+    }
+
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
     {
-        finished = new CountDownLatch(Width * Height);
+        if (census == null) {
+            census = super.getCensus();
+        }
+        finished = new CountDownLatch(cells.length);
+        if (periodWindow <= 0 || getPeriod() > 0) {
+            generations = null;
+        }
+        else if (generations == null) {
+            generations = new Generations(Math.max(Width, Height) + 4, cells.length);
+        }
 
-        ForkJoinPool pool = new ForkJoinPool(
-                nThreads,
-                ForkJoinPool.defaultForkJoinWorkerThreadFactory,
-                (t,e) -> e.printStackTrace(),
-                false);
+        if (pool == null) {
+            workers = new Workers();
+            pool = workers.newPool(nThreads);
+        }
+        workers.clear();
 
+        // Whichever of the two generations is behind goes next
         for (Cell cell : cells) {
-            pool.execute(cell.neighbors[0]);
+            pool.execute(cell.neighbors[0].time <= cell.time ? cell.neighbors[0] : cell);
         }
 
         try {
@@ -125,7 +239,16 @@ public class NoWaitLife extends Life {
         catch (InterruptedException ex) {
             ex.printStackTrace();
         }
-        pool.shutdown();
+
+        census = new Census(epoch + maxTime, workers.getTallies());
+    }
+
+    public void close() {
+        super.close();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     private int getNeighbor(int r, int c, int i)
@@ -156,33 +279,53 @@ public class NoWaitLife extends Life {
     }
 
 
+    protected void setState(int[] s) {
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                Cell cell = cells[idx];
+                Cell alt = cell.neighbors[0];
+                cell.state = s[idx] == 0 ? STATE0 : STATE1;
+                cell.time = 0;
+                cell.count.set(cell.neighbors.length);
+                alt.state = 0;
+                alt.time = 0;
+                alt.count.set(alt.neighbors.length);
+            }
+        });
+        census = null;
+    }
+
     public NoWaitLife(int w, int h, int t, int p, boolean v, int[] s)
     {
         super(w, h, t, p, v);
 
         // Initialize cells
         cells = new Cell[Width * Height];
-        for (int r = 0; r < Height; ++r) {
-            for (int c = 0; c < Width; ++c) {
-                int idx = r * Width + c;
-                Cell cell = new Cell(idx, s[idx] == 0 ? STATE0 : STATE1);
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                Cell cell = new Cell(idx, s == null || s[idx] == 0 ? STATE0 : STATE1);
                 Cell alt = new Cell(idx, 0);
                 cell.neighbors[0] = alt;
                 alt.neighbors[0] = cell;
                 cells[idx] = cell;
             }
-        }
-        for (int r = 0; r < Height; ++r) {
-            for (int c = 0; c < Width; ++c) {
-                int idx = r * Width + c;
+        });
+
+        // Each layer reads from the other one: gather both so that threads only
+        // write to cells of their own range
+        parallel(nThreads, cells.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
                 Cell cell = cells[idx];
+                Cell alt = cell.neighbors[0];
+                int r = idx / Width;
+                int c = idx % Width;
                 for (int i = 1; i < cell.neighbors.length; ++i) {
-                    Cell neighbor = cells[getNeighbor(r, c, i)].neighbors[0];
-                    cell.neighbors[i] = neighbor;
-                    neighbor.neighbors[i + 4 > 8 ? i - 4 : i + 4] = cell;
+                    Cell neighbor = cells[getNeighbor(r, c, i)];
+                    cell.neighbors[i] = neighbor.neighbors[0];
+                    alt.neighbors[i] = neighbor;
                 }
             }
-        }
+        });
     }
 
     public static void main(String[] args) {
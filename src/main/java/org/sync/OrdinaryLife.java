@@ -17,21 +17,38 @@
 package org.sync;
 
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Synchronous parallel implementation of Life
  *
+ * Cells may also be kept off the heap in a Storage, direct memory or
+ * a memory-mapped file, as two flat layers of states instead of a graph
+ * of Cell objects, with long indices for grids of more than 2^31 cells.
+ * Such a grid is built without an initial state, all dead, and its live
+ * cells are then set one by one.
+ *
  * https://github.com/OlegMazurov/Koyaanisqatsi
  *
  */
 
 public class OrdinaryLife extends Life {
 
+    private final long size;
     private final Cell[] cells;
+    private final Storage store;
+    private final boolean pointToPoint;
     private CyclicBarrier barrier;
     private boolean useAlt;
+    private int generation;
+    private final long[][] tallies;
+    private volatile Census census;
+    private Stripe[] stripes;
 
     protected int getState(int row, int col) {
+        if (store != null) {
+            return store.get((useAlt ? size : 0) + (long)row * Width + col);
+        }
         Cell cell = cells[row * Width + col];
         if (useAlt) {
             cell = cell.neighbors[0];
@@ -39,6 +56,16 @@ public class OrdinaryLife extends Life {
         return cell.state;
     }
 
+    protected void setAlive(int row, int col) {
+        long idx = (long)row * Width + col;
+        if (store != null) {
+            store.set(idx, STATE1);
+        }
+        else {
+            cells[(int)idx].state = STATE1;
+        }
+    }
+
     private static class Cell {
         int state;
         Cell[] neighbors;
@@ -49,8 +76,7 @@ public class OrdinaryLife extends Life {
             neighbors = new Cell[9];
         }
 
-        void updateState() {
-            state = neighbors[0].state;
+        int updateState(int[] table) {
             int sum = 0;
             for (int i = 1; i < neighbors.length; ++i) {
                 if (neighbors[i].state == STATE1) {
@@ -58,33 +84,98 @@ public class OrdinaryLife extends Life {
                 }
             }
 
-            // Apply the rule of Life
-            if (sum < 2 || sum > 3) {
-                state = STATE0;
+            // Apply the rule
+            state = table[(sum << 1) | neighbors[0].state];
+            return state;
+        }
+    }
+
+    /**
+     * A horizontal stripe of whole rows with the last generation it completed
+     */
+    private static class Stripe {
+        final int minRow;
+        final int maxRow;
+        volatile int time;
+        Stripe prev;
+        Stripe next;
+        // Worker running the stripe, set before it first checks its neighbors
+        volatile Thread thread;
+        final long[] tally = Census.newTally();
+
+        Stripe(int r0, int r1) {
+            minRow = r0;
+            maxRow = r1;
+            time = T0;
+        }
+    }
+
+    /**
+     * Off-heap counterpart of Cell.updateState(table) for a range of cells of the layer at dst
+     */
+    private void updateStored(long src, long dst, long minIdx, long maxIdx, long[] tally) {
+        int[] table = rule.table;
+        boolean hashing = periodWindow > 0;
+        int r = (int)(minIdx / Width);
+        int c = (int)(minIdx % Width);
+        for (long idx = minIdx; idx < maxIdx; ++idx) {
+            long row = idx - c;
+            long below = r == 0 ? row + (long)(Height - 1) * Width : row - Width;
+            long above = r == Height - 1 ? 0 : row + Width;
+            int left = c == 0 ? Width - 1 : c - 1;
+            int right = c == Width - 1 ? 0 : c + 1;
+            int sum = store.get(src + below + left) + store.get(src + below + c) + store.get(src + below + right)
+                    + store.get(src + row + left) + store.get(src + row + right)
+                    + store.get(src + above + left) + store.get(src + above + c) + store.get(src + above + right);
+
+            // Apply the rule
+            int state = table[(sum << 1) | store.get(src + idx)];
+            store.set(dst + idx, state);
+            if (state != STATE0) {
+                Census.add(tally, r, c);
+                if (hashing) {
+                    Census.hash(tally, idx);
+                }
             }
-            else if (sum == 3) {
-                state = STATE1;
+
+            if (++c == Width) {
+                c = 0;
+                ++r;
             }
         }
     }
 
     private void runStaticSchedule(int id) {
+        int[] table = rule.table;
 
-        int minIdx = (int)((long)id * cells.length / nThreads);
-        int maxIdx = (int)((long)(id + 1) * cells.length / nThreads);
+        long minIdx = size * id / nThreads;
+        long maxIdx = size * (id + 1) / nThreads;
+        long[] tally = Census.newTally();
+        tallies[id] = tally;
+        boolean hashing = periodWindow > 0;
 
-        for (int time = 1; time <= maxTime; ++time) {
+        for (int time = current + 1; time <= maxTime; ++time) {
 
-            for (int idx = minIdx; idx < maxIdx; ++idx) {
-                Cell cell = useAlt ? cells[idx] : cells[idx].neighbors[0];
-                cell.updateState();
-
-                // Color live cells according to the current thread id
-                setColor(idx, cell.state == STATE0 ? 0 : id + 1);
-                // Color all cells according to the current thread id
-                //setColor(idx, (int)Thread.currentThread().getId())
-                // Color all cells according to the current generation
-                //setColor(idx, TS1);
+            Census.clear(tally);
+            if (store != null) {
+                updateStored(useAlt ? size : 0, useAlt ? 0 : size, minIdx, maxIdx, tally);
+            }
+            else {
+                int r = (int)(minIdx / Width);
+                int c = (int)(minIdx % Width);
+                for (int idx = (int)minIdx; idx < maxIdx; ++idx) {
+                    Cell cell = useAlt ? cells[idx] : cells[idx].neighbors[0];
+                    if (cell.updateState(table) != STATE0) {
+                        Census.add(tally, r, c);
+                        if (hashing) {
+                            Census.hash(tally, idx);
+                        }
+                    }
+                    if (++c == Width) {
+                        c = 0;
+                        ++r;
+                    }
+                }
             }
 
             try {
@@ -98,24 +189,101 @@ public class OrdinaryLife extends Life {
         }
     }
 
-    public void execute()
-    {
-        // Run concurrently
-        Thread[] threads = new Thread[nThreads];
-        for (int t = 0; t < threads.length; ++t) {
-            final int id = t;
-            Thread thread = new Thread(() -> runStaticSchedule(id));
-            threads[t] = thread;
-            thread.start();
+    /**
+     * Barrier action: switch layers, add up the tallies of the generation,
+     * look for a cycle and take a checkpoint if one is due
+     */
+    private void nextGeneration() {
+        useAlt = !useAlt;
+        ++generation;
+        census = new Census(epoch + generation, tallies);
+        onGeneration(generation, Census.hashOf(tallies), Census.checkOf(tallies), generation);
+        if (isCheckpointDue(generation)) {
+            saveCheckpoint(getCheckpoint(generation));
         }
+    }
+
+    protected boolean hasGenerationHook() {
+        return !pointToPoint;
+    }
+
+    protected boolean takesCheckpoints() {
+        return !pointToPoint;
+    }
+
+    /**
+     * Census of the last generation the static schedule completed, or the
+     * one point-to-point stripes counted at the end of the last run
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    /**
+     * A stripe only waits for the two adjacent stripes to complete generation
+     * time-1 before computing generation time: by then nobody needs the values
+     * of generation time-2 it is about to overwrite.
+     */
+    private void runPointToPoint(int id) {
+
+        Stripe stripe = stripes[id];
+        stripe.thread = Thread.currentThread();
+        int[] table = rule.table;
+        long minIdx = (long)stripe.minRow * Width;
+        long maxIdx = (long)stripe.maxRow * Width;
+
+        // Stripes are at different generations, only the last one is counted
+        long[] scratch = Census.newTally();
+        Census.clear(stripe.tally);
+
+        for (int time = current + 1; time <= maxTime; ++time) {
 
-        try {
-            for (Thread thread : threads) {
-                thread.join();
+            while (stripe.prev.time < time - 1 || stripe.next.time < time - 1) {
+                LockSupport.park(this);
             }
+
+            long[] tally = time == maxTime ? stripe.tally : null;
+            if (store != null) {
+                long dst = (time & 0x1) == 0 ? 0 : size;
+                updateStored(size - dst, dst, minIdx, maxIdx, tally != null ? tally : scratch);
+            }
+            else {
+                for (int idx = (int)minIdx; idx < maxIdx; ++idx) {
+                    Cell cell = (time & 0x1) == 0 ? cells[idx] : cells[idx].neighbors[0];
+                    if (cell.updateState(table) != STATE0 && tally != null) {
+                        Census.add(tally, idx / Width, idx % Width);
+                    }
+                }
+            }
+
+            stripe.time = time;
+            LockSupport.unpark(stripe.prev.thread);
+            LockSupport.unpark(stripe.next.thread);
+        }
+    }
+
+    protected void run()
+    {
+        generation = current;
+        if (pointToPoint && census == null) {
+            census = super.getCensus();
+        }
+        // Run concurrently
+        if (pointToPoint) {
+            runWorkers(stripes.length, this::runPointToPoint);
+        }
+        else {
+            runWorkers(nThreads, this::runStaticSchedule);
         }
-        catch (InterruptedException ie) {
-            ie.printStackTrace();
+        awaitCheckpoint();
+        if (pointToPoint) {
+            useAlt = (maxTime & 0x1) == 1;
+            long[][] counted = new long[stripes.length][];
+            for (int i = 0; i < stripes.length; ++i) {
+                counted[i] = stripes[i].tally;
+            }
+            census = new Census(epoch + maxTime, counted);
         }
     }
 
@@ -146,35 +314,102 @@ public class OrdinaryLife extends Life {
         return r * Width + c;
     }
 
+    protected void setState(int[] s) {
+        parallel(nThreads, s.length, (from, to) -> {
+            for (int idx = from; idx < to; ++idx) {
+                int state = s[idx] == 0 ? STATE0 : STATE1;
+                if (store != null) {
+                    store.set(idx, state);
+                }
+                else {
+                    cells[idx].state = state;
+                    cells[idx].neighbors[0].state = 0;
+                }
+            }
+        });
+        useAlt = false;
+        generation = T0;
+        census = null;
+        for (Stripe stripe : stripes) {
+            stripe.time = T0;
+        }
+    }
+
     public OrdinaryLife(int w, int h, int t, int p, boolean v, int[] s) {
+        this(w, h, t, p, v, s, false);
+    }
+
+    public OrdinaryLife(int w, int h, int t, int p, boolean v, int[] s, boolean p2p) {
+        this(w, h, t, p, v, s, p2p, false);
+    }
+
+    public OrdinaryLife(int w, int h, int t, int p, boolean v, int[] s, boolean p2p, boolean offHeap) {
         super(w, h, t, p, v);
+        pointToPoint = p2p;
+        size = (long)Width * Height;
 
         // Initialize cells
-        cells = new Cell[Width * Height];
-        for (int r = 0; r < Height; ++r) {
-            for (int c = 0; c < Width; ++c) {
-                int idx = r * Width + c;
-                Cell cell = new Cell(idx, s[idx] == 0 ? STATE0 : STATE1);
-                Cell alt = new Cell(idx, 0);
-                cell.neighbors[0] = alt;
-                alt.neighbors[0] = cell;
-                cells[idx] = cell;
+        if (offHeap) {
+            cells = null;
+            store = Storage.create(2 * size);
+
+            // Storage is zero-filled, all dead
+            if (s != null) {
+                parallel(nThreads, s.length, (from, to) -> {
+                    for (int idx = from; idx < to; ++idx) {
+                        store.set(idx, s[idx] == 0 ? STATE0 : STATE1);
+                    }
+                });
             }
         }
-        for (int r = 0; r < Height; ++r) {
-            for (int c = 0; c < Width; ++c) {
-                int idx = r * Width + c;
-                Cell cell = cells[idx];
-                for (int i = 1; i < cell.neighbors.length; ++i) {
-                    Cell neighbor = cells[getNeighbor(r, c, i)].neighbors[0];
-                    cell.neighbors[i] = neighbor;
-                    neighbor.neighbors[i + 4 > 8 ? i - 4 : i + 4] = cell;
-                }
+        else {
+            store = null;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("grid of " + size + " cells does not fit the heap, use ORDINARY_OFFHEAP");
             }
+            cells = new Cell[Width * Height];
+            parallel(nThreads, cells.length, (from, to) -> {
+                for (int idx = from; idx < to; ++idx) {
+                    Cell cell = new Cell(idx, s == null || s[idx] == 0 ? STATE0 : STATE1);
+                    Cell alt = new Cell(idx, 0);
+                    cell.neighbors[0] = alt;
+                    alt.neighbors[0] = cell;
+                    cells[idx] = cell;
+                }
+            });
+
+            // Each layer reads from the other one: gather both so that threads only
+            // write to cells of their own range
+            parallel(nThreads, cells.length, (from, to) -> {
+                for (int idx = from; idx < to; ++idx) {
+                    Cell cell = cells[idx];
+                    Cell alt = cell.neighbors[0];
+                    int r = idx / Width;
+                    int c = idx % Width;
+                    for (int i = 1; i < cell.neighbors.length; ++i) {
+                        Cell neighbor = cells[getNeighbor(r, c, i)];
+                        cell.neighbors[i] = neighbor.neighbors[0];
+                        alt.neighbors[i] = neighbor;
+                    }
+                }
+            });
         }
         useAlt = false;
+        generation = T0;
+        tallies = new long[nThreads][];
+
+        barrier = new CyclicBarrier(nThreads, this::nextGeneration);
 
-        barrier = new CyclicBarrier(nThreads, () -> { useAlt = !useAlt; });
+        // Stripes of whole rows, at least one row each, in a ring
+        stripes = new Stripe[Math.min(nThreads, Height)];
+        for (int id = 0; id < stripes.length; ++id) {
+            stripes[id] = new Stripe((int)((long)id * Height / stripes.length),
+                                     (int)((long)(id + 1) * Height / stripes.length));
+        }
+        for (int id = 0; id < stripes.length; ++id) {
+            stripes[id].prev = stripes[id == 0 ? stripes.length - 1 : id - 1];
+            stripes[id].next = stripes[id == stripes.length - 1 ? 0 : id + 1];
+        }
     }
 
     public static void main(String[] args) {
@@ -17,14 +17,38 @@
 package org.sync;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
 
 /**
  * Created by olegmazurov on 7/10/17.
+ *
+ * A pattern read from a file only keeps its header: live cells are decoded
+ * from the file every time they are requested, straight from memory-mapped
+ * windows of the file, so loading takes time proportional to the file and
+ * no memory proportional to the bounding box.
  */
 public class RLE {
+
+    private static final long WINDOW = 1L << 30;
+
     private int w;
     private int h;
+    private Rule rule = Rule.LIFE;
     private int[] state;
+    private String file;
+
+    /**
+     * Receiver of the live cells of a pattern
+     */
+    public interface Cells {
+        void setAlive(int x, int y);
+    }
 
     public int getW() {
         return w;
@@ -34,12 +58,53 @@ public class RLE {
         return h;
     }
 
+    /**
+     * Rule from the header, Life if the header has none
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Whether cells are held in memory rather than decoded from the file on every pass
+     */
+    public boolean isDecoded() {
+        return state != null;
+    }
+
     public int[] getState() {
+        if (state == null) {
+            int[] s = new int[w * h];
+            forEachLive((x, y) -> s[y * w + x] = 1);
+            state = s;
+        }
         return state;
     }
 
     public int getState(int x, int y) {
-        return state[y * w + x];
+        return getState()[y * w + x];
+    }
+
+    /**
+     * Stream all live cells of the pattern
+     */
+    public void forEachLive(Cells cells) {
+        if (state != null) {
+            for (int y = 0; y < h; ++y) {
+                for (int x = 0; x < w; ++x) {
+                    if (state[y * w + x] != 0) {
+                        cells.setAlive(x, y);
+                    }
+                }
+            }
+            return;
+        }
+        try {
+            read(file, new Decoder(cells));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("bad file: " + file, e);
+        }
     }
 
     /* Acorn pattern:
@@ -68,32 +133,46 @@ public class RLE {
         return rle;
     }
 
-    public static RLE fromFile(String fname)
-    {
-        try {
-            if (fname == null || fname.length() == 0) {
-                System.err.println("ERROR: empty file name");
-            }
-            char ch = fname.charAt(0);
-            String resourceName = ch == '/' ? fname : "/" + fname;
-
-            InputStream is = RLE.class.getResourceAsStream(resourceName);
-            BufferedReader in = is != null ? new BufferedReader(new InputStreamReader(is)) :
-                    new BufferedReader(new FileReader(fname));
-
-            // Skip comments
-            String line;
-            for (;;) {
-                line = in.readLine();
-                if (line.charAt(0) != '#') {
-                    break;
-                }
-            }
+    /* Random soup: every cell is alive with probability 1/3
+     */
+    public static RLE getRandom(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        int[] state = new int[w * h];
+        for (int i = 0; i < state.length; ++i) {
+            state[i] = rnd.nextInt(3) == 0 ? 1 : 0;
+        }
+
+        RLE rle = new RLE();
+        rle.w = w;
+        rle.h = h;
+        rle.state = state;
+        return rle;
+    }
+
+    /**
+     * Incremental parser of an RLE stream, fed one buffer at a time
+     */
+    private static final class Decoder {
+        final Cells cells;
+        final StringBuilder line = new StringBuilder();
+        boolean comment;
+        boolean header;
+        int w;
+        int h;
+        Rule rule = Rule.LIFE;
+        int x;
+        int y;
+        int rcnt;
 
-            // Parse parameters
-            int w = 0;
-            int h = 0;
-            String[] tokens = line.split("[ ,]+");
+        /**
+         * Without cells only the header is parsed
+         */
+        Decoder(Cells c) {
+            cells = c;
+        }
+
+        private void parseHeader() {
+            String[] tokens = line.toString().trim().split("[ ,]+");
             for (int i=0; i<tokens.length; ++i) {
                 if (tokens[i].equals("x")) {
                     w = Integer.parseInt(tokens[i+2]);
@@ -103,67 +182,206 @@ public class RLE {
                     h = Integer.parseInt(tokens[i+2]);
                     i += 2;
                 }
+                else if (tokens[i].equals("rule")) {
+                    // Drop a bounded grid suffix such as :T100,100
+                    String str = tokens[i+2].split(":")[0];
+                    try {
+                        rule = Rule.parse(str);
+                    }
+                    catch (IllegalArgumentException e) {
+                        // Such as Generations: the cells are still read, as Life
+                        if (cells == null) {
+                            System.err.println("WARNING: unsupported rule " + str + ", running Life instead");
+                        }
+                        rule = Rule.LIFE;
+                    }
+                    i += 2;
+                }
                 else {
                     break;
                 }
             }
+            header = true;
+        }
 
-            // Read the state
-            int[] state = new int[w * h];
-            int idx = 0;
-            int rcnt = 0;
-            loop:       for (;;) {
-                line = in.readLine();
-                if (line == null) {
-                    break;
-                }
-                for (int i=0; i<line.length(); ++i) {
-                    char c = line.charAt(i);
-                    switch (c) {
-                        case ' ': case '\t': case '\n': case '\r':
-                            break;
-                        case '0': case '1': case '2': case '3': case '4':
-                        case '5': case '6': case '7': case '8': case '9':
-                            rcnt = rcnt*10 + (c-'0');
-                            break;
-                        case 'o':
-                            if (rcnt == 0) rcnt = 1;
-                            for (int j=0; j<rcnt; ++j) {
-                                state[idx++] = 1;
+        /**
+         * Consume the buffer, return false when no more input is needed
+         */
+        boolean feed(ByteBuffer buf) {
+            while (buf.hasRemaining()) {
+                char c = (char)buf.get();
+                if (!header) {
+                    // Skip comments, collect the header line
+                    if (c == '\n') {
+                        if (!comment && line.length() > 0) {
+                            parseHeader();
+                            if (cells == null) {
+                                return false;
                             }
-                            rcnt = 0;
-                            break;
-                        case 'b':
-                            if (rcnt == 0) rcnt = 1;
-                            for (int j=0; j<rcnt; ++j) {
-                                state[idx++] = 0;
-                            }
-                            rcnt = 0;
-                            break;
-                        case '$':
-                            if (rcnt == 0) rcnt = 1;
-                            int nidx = ((idx - 1)/w + rcnt) * w;
-                            while (idx < nidx) {
-                                state[idx++] = 0;
-                            }
-                            rcnt = 0;
-                            break;
-                        case '!':
-                            while (idx < state.length) {
-                                state[idx++] = 0;
+                        }
+                        comment = false;
+                        line.setLength(0);
+                    }
+                    else if (c == '#' && line.length() == 0) {
+                        comment = true;
+                    }
+                    else if (!comment) {
+                        line.append(c);
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '0': case '1': case '2': case '3': case '4':
+                    case '5': case '6': case '7': case '8': case '9':
+                        rcnt = rcnt*10 + (c-'0');
+                        break;
+                    case 'o':
+                        if (rcnt == 0) rcnt = 1;
+                        if (y < h) {
+                            for (int j = Math.min(x + rcnt, w) - 1; j >= x; --j) {
+                                cells.setAlive(j, y);
                             }
-                            break loop;
+                        }
+                        x += rcnt;
+                        rcnt = 0;
+                        break;
+                    case 'b':
+                        if (rcnt == 0) rcnt = 1;
+                        x += rcnt;
+                        rcnt = 0;
+                        break;
+                    case '$':
+                        if (rcnt == 0) rcnt = 1;
+                        y += rcnt;
+                        x = 0;
+                        rcnt = 0;
+                        break;
+                    case '!':
+                        return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Feed a classpath resource or a file to the decoder, files are mapped
+     * to memory a window at a time
+     */
+    private static void read(String fname, Decoder d) throws IOException {
+        String resourceName = fname.charAt(0) == '/' ? fname : "/" + fname;
+        InputStream is = RLE.class.getResourceAsStream(resourceName);
+        if (is != null) {
+            try (ReadableByteChannel ch = Channels.newChannel(is)) {
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+                while (ch.read(buf) >= 0) {
+                    buf.flip();
+                    if (!d.feed(buf)) {
+                        return;
+                    }
+                    buf.clear();
+                }
+            }
+        }
+        else {
+            try (FileChannel ch = FileChannel.open(Paths.get(fname), StandardOpenOption.READ)) {
+                long size = ch.size();
+                for (long pos = 0; pos < size; pos += WINDOW) {
+                    if (!d.feed(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos)))) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Run-length encoder that wraps lines at 70 characters
+     */
+    private static final class Encoder {
+        final Writer out;
+        int col;
+
+        Encoder(Writer w) {
+            out = w;
+        }
+
+        void emit(int cnt, char tag) throws IOException {
+            String token = cnt == 1 ? String.valueOf(tag) : cnt + String.valueOf(tag);
+            if (col + token.length() > 70) {
+                out.write('\n');
+                col = 0;
+            }
+            out.write(token);
+            col += token.length();
+        }
+    }
+
+    /**
+     * Encode the current state of an engine straight from getState(),
+     * without a copy of the grid
+     */
+    public static void write(Life life, Writer out) throws IOException
+    {
+        out.write("x = " + life.Width + ", y = " + life.Height + ", rule = " + life.getRule() + "\n");
+        Encoder enc = new Encoder(out);
+        int rows = 0;
+        for (int r = 0; r < life.Height; ++r) {
+            int prev = 0;
+            int run = 0;
+            for (int c = 0; c < life.Width; ++c) {
+                int s = life.getState(r, c);
+                if (s == prev) {
+                    ++run;
+                    continue;
+                }
+                if (run > 0) {
+                    if (rows > 0) {
+                        enc.emit(rows, '$');
+                        rows = 0;
                     }
+                    enc.emit(run, prev == 0 ? 'b' : 'o');
                 }
+                prev = s;
+                run = 1;
+            }
+            // Trailing dead cells and empty rows are implied
+            if (prev != 0) {
+                if (rows > 0) {
+                    enc.emit(rows, '$');
+                    rows = 0;
+                }
+                enc.emit(run, 'o');
+            }
+            ++rows;
+        }
+        out.write("!\n");
+    }
+
+    /**
+     * Read the header of a pattern file, cells are decoded on demand
+     */
+    public static RLE fromFile(String fname)
+    {
+        if (fname == null || fname.length() == 0) {
+            System.err.println("ERROR: empty file name");
+            return null;
+        }
+        try {
+            Decoder d = new Decoder(null);
+            read(fname, d);
+            if (!d.header || d.w <= 0 || d.h <= 0) {
+                throw new IOException("no header");
             }
 
             RLE rle = new RLE();
-            rle.w = w;
-            rle.h = h;
-            rle.state = state;
+            rle.w = d.w;
+            rle.h = d.h;
+            rle.rule = d.rule;
+            rle.file = fname;
             return rle;
         }
-        catch(IOException e) {
+        catch(IOException | RuntimeException e) {
             System.err.println("ERROR: bad file: " + fname);
             return null;
         }
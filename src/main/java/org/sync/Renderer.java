@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Visualization of a running engine
+ *
+ * A thread of its own samples the state of all cells through getState()
+ * at frame rate and shows it in a window, or saves it as a numbered PNG
+ * frame without any display. Engines never write pixels, but a visual run
+ * is not free: every sample reads all cells through getState() while the
+ * engine runs, competing for memory bandwidth and a processor, and some
+ * engines publish a copy of their state for it, UNBOUNDED its chunk map
+ * every generation and HASHLIFE its cells every step. Samples are taken
+ * while cells are being updated and may mix adjacent generations.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class Renderer {
+
+    private static final int FRAME_MILLIS = 40;
+    private static final int LIVE = 0xffffff;
+
+    private final Life life;
+    private final BufferedImage img;
+    private final int[] imgData;
+    private final JFrame frame;
+    private final String dir;
+    private int frames;
+    private volatile boolean running;
+    private Thread thread;
+
+    public Renderer(Life lf, boolean window, String frameDir) {
+        life = lf;
+        dir = frameDir;
+        img = new BufferedImage(life.Width, life.Height, BufferedImage.TYPE_INT_RGB);
+        imgData = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+
+        if (window) {
+            frame = new JFrame() {
+                public void paint(Graphics g) {
+                    g.drawImage(img, 0, 0, getWidth(), getHeight(), null);
+                }
+            };
+            frame.setSize(life.Width, life.Height);
+            frame.addWindowListener(new WindowAdapter() {
+                public void windowClosing(WindowEvent e) {
+                    System.exit(0);
+                }
+            });
+            frame.setVisible(true);
+        }
+        else {
+            frame = null;
+        }
+        if (dir != null) {
+            new File(dir).mkdirs();
+        }
+    }
+
+    private void draw() {
+        for (int r = 0; r < life.Height; ++r) {
+            int row = r * life.Width;
+            for (int c = 0; c < life.Width; ++c) {
+                imgData[row + c] = life.getState(r, c) == 0 ? 0 : LIVE;
+            }
+        }
+        if (frame != null) {
+            frame.repaint();
+        }
+        if (dir != null) {
+            File file = new File(dir, String.format("frame-%06d.png", frames++));
+            try {
+                ImageIO.write(img, "png", file);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException("cannot write " + file, ex);
+            }
+        }
+    }
+
+    private void runFrames() {
+        while (running) {
+            long start = System.currentTimeMillis();
+            draw();
+            long wait = FRAME_MILLIS - (System.currentTimeMillis() - start);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                }
+                catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start sampling frames
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this::runFrames);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop sampling and render the final state
+     */
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException ie) {
+            ie.printStackTrace();
+        }
+        draw();
+    }
+
+    /**
+     * Number of frames saved so far
+     */
+    public int getFrames() {
+        return frames;
+    }
+}
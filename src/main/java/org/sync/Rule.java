@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+/**
+ * Outer-totalistic rule of a two-state cellular automaton
+ *
+ * A rulestring such as B3/S23 (Life), B36/S23 (HighLife) or B3678/S34678
+ * (Day & Night) lists the neighbor sums that give birth to a dead cell and
+ * those that let a live cell survive. It is compiled into a table indexed
+ * by (sum << 1) | state, so engines apply any rule with a single load.
+ * Bit-sliced engines compare the bit planes of the sum against the sets,
+ * except for Life itself which keeps the carry-save adders of BitwiseLife.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public final class Rule {
+
+    public static final Rule LIFE = parse("B3/S23");
+
+    private final int birth;
+    private final int survival;
+    private final boolean life;
+    final int[] table;
+
+    private static final int MASKS = 6;
+
+    /**
+     * For every sum in either set, in ascending order, MASKS words: the four
+     * bit planes of the sum, then whether it gives birth and survival, each
+     * all ones or all zeros
+     */
+    private final long[] masks;
+
+    private Rule(int b, int s) {
+        birth = b;
+        survival = s;
+        life = b == 1 << 3 && s == (1 << 2 | 1 << 3);
+        table = new int[18];
+        for (int sum = 0; sum <= 8; ++sum) {
+            table[sum << 1] = (birth >>> sum) & 0x1;
+            table[(sum << 1) | 1] = (survival >>> sum) & 0x1;
+        }
+
+        masks = new long[Integer.bitCount(b | s) * MASKS];
+        int k = 0;
+        for (int sum = 0; sum <= 8; ++sum) {
+            if (((b | s) >>> sum & 0x1) == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < 4; ++bit) {
+                masks[k + bit] = -(long)(sum >>> bit & 0x1);
+            }
+            masks[k + 4] = -(long)(b >>> sum & 0x1);
+            masks[k + 5] = -(long)(s >>> sum & 0x1);
+            k += MASKS;
+        }
+    }
+
+    /**
+     * Parse B.../S... in either order, or the S/B form 23/3, in any case
+     */
+    public static Rule parse(String str) {
+        String[] parts = str.trim().toUpperCase().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("bad rule: " + str);
+        }
+        int b = -1;
+        int s = -1;
+        for (int i = 0; i < 2; ++i) {
+            String part = parts[i];
+            if (part.startsWith("B")) {
+                b = sums(part.substring(1), str);
+            }
+            else if (part.startsWith("S")) {
+                s = sums(part.substring(1), str);
+            }
+            else if (i == 0) {
+                s = sums(part, str);
+            }
+            else {
+                b = sums(part, str);
+            }
+        }
+        if (b < 0 || s < 0) {
+            throw new IllegalArgumentException("bad rule: " + str);
+        }
+        return new Rule(b, s);
+    }
+
+    private static int sums(String digits, String str) {
+        int mask = 0;
+        for (int i = 0; i < digits.length(); ++i) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '8') {
+                throw new IllegalArgumentException("bad rule: " + str);
+            }
+            mask |= 1 << (c - '0');
+        }
+        return mask;
+    }
+
+    /**
+     * Whether dead cells with no live neighbors are born
+     */
+    public boolean hasB0() {
+        return (birth & 0x1) != 0;
+    }
+
+    public int next(int state, int sum) {
+        return table[(sum << 1) | state];
+    }
+
+    /**
+     * The rule applied to 64 cells at once, arguments as in BitwiseLife.evolve
+     */
+    public long evolve(long self,
+                       long nw, long n, long ne,
+                       long w, long e,
+                       long sw, long s, long se)
+    {
+        if (life) {
+            return BitwiseLife.evolve(self, nw, n, ne, w, e, sw, s, se);
+        }
+
+        // Bit planes of the sum: three neighbors above, three below, two aside
+        long t = nw ^ n;
+        long onesN = t ^ ne;
+        long twosN = (nw & n) | (t & ne);
+        t = sw ^ s;
+        long onesS = t ^ se;
+        long twosS = (sw & s) | (t & se);
+        long onesM = w ^ e;
+        long twosM = w & e;
+
+        t = onesN ^ onesS;
+        long ones = t ^ onesM;
+        long twos0 = (onesN & onesS) | (t & onesM);
+
+        t = twosN ^ twosS;
+        long twos1 = t ^ twosM;
+        long fours1 = (twosN & twosS) | (t & twosM);
+        long twos = twos1 ^ twos0;
+        long fours2 = twos1 & twos0;
+        long fours = fours1 ^ fours2;
+        long eights = fours1 & fours2;
+
+        // Cells whose sum matches all four planes of a sum of the rule
+        long born = 0;
+        long kept = 0;
+        long[] m = masks;
+        for (int k = 0; k < m.length; k += MASKS) {
+            long eq = ~((ones ^ m[k]) | (twos ^ m[k + 1]) | (fours ^ m[k + 2]) | (eights ^ m[k + 3]));
+            born |= eq & m[k + 4];
+            kept |= eq & m[k + 5];
+        }
+        return (~self & born) | (self & kept);
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof Rule)) return false;
+        Rule r = (Rule)o;
+        return birth == r.birth && survival == r.survival;
+    }
+
+    public int hashCode() {
+        return birth << 9 | survival;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("B");
+        for (int sum = 0; sum <= 8; ++sum) {
+            if ((birth >>> sum & 0x1) != 0) sb.append(sum);
+        }
+        sb.append("/S");
+        for (int sum = 0; sum <= 8; ++sum) {
+            if ((survival >>> sum & 0x1) != 0) sb.append(sum);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap array of ints with long indices
+ *
+ * The array is split into segments of at most 2^28 ints, each a direct
+ * buffer or a region of a memory-mapped file, so its length is not limited
+ * by the size of a Java array nor by the heap. Reads and writes are plain,
+ * exactly as for an int[]: the NoSync protocol doesn't need anything else.
+ * Direct memory is limited by -XX:MaxDirectMemorySize.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class Storage {
+
+    private static final int SHIFT = 28;
+    private static final int MASK = (1 << SHIFT) - 1;
+
+    private final long length;
+    private final IntBuffer[] segments;
+
+    public long length() {
+        return length;
+    }
+
+    public int get(long idx) {
+        return segments[(int)(idx >>> SHIFT)].get((int)idx & MASK);
+    }
+
+    public void set(long idx, int value) {
+        segments[(int)(idx >>> SHIFT)].put((int)idx & MASK, value);
+    }
+
+    private Storage(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative length: " + n);
+        }
+        length = n;
+        segments = new IntBuffer[(int)((n + MASK) >>> SHIFT)];
+    }
+
+    private static int segmentLength(long n, int seg) {
+        return (int)Math.min(n - ((long)seg << SHIFT), 1L << SHIFT);
+    }
+
+    /**
+     * Zero-filled ints in direct memory
+     */
+    public static Storage allocate(long n) {
+        Storage res = new Storage(n);
+        for (int seg = 0; seg < res.segments.length; ++seg) {
+            res.segments[seg] = ByteBuffer.allocateDirect(4 * segmentLength(n, seg))
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return res;
+    }
+
+    /**
+     * Zero-filled ints in a file mapped to memory, the file is created or truncated
+     */
+    public static Storage map(String fname, long n) {
+        Storage res = new Storage(n);
+        try (FileChannel ch = FileChannel.open(Paths.get(fname),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int seg = 0; seg < res.segments.length; ++seg) {
+                res.segments[seg] = ch.map(FileChannel.MapMode.READ_WRITE,
+                        4L * ((long)seg << SHIFT), 4L * segmentLength(n, seg))
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("cannot map " + fname, ex);
+        }
+        return res;
+    }
+
+    /**
+     * Direct memory, or the file set with -m
+     */
+    static Storage create(long n) {
+        return Life.mapFile == null ? allocate(n) : map(Life.mapFile, n);
+    }
+}
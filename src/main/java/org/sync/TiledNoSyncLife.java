@@ -0,0 +1,491 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+/**
+ * Asynchronous parallel wait-free unsynchronized implementation of Life
+ * with tiles of cells as the unit of work
+ *
+ * The protocol is the one of NoSyncLife applied to square tiles instead of
+ * single cells: a tile keeps two generations of its content and the parity
+ * over itself and its eight neighbor tiles. A tile value is an immutable Gen
+ * object, so a plain reference write replaces all cells of a tile at once
+ * and a delayed thread can only ever store a stale but consistent tile.
+ *
+ * A thread stops after finding every tile at maxTime in one scan. The scan
+ * of the first thread also counts the live cells into a tally, the census
+ * of maxTime.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class TiledNoSyncLife extends Life {
+
+    public static final int MAX_TILE = 62;
+
+    private final int tile;
+    private final int tilesX;
+    private final Tile[] tiles;
+    private final long[] tally = Census.newTally();
+    private volatile Census census;
+
+    /**
+     * Content of a tile, or parity of a tile with its halo, at generation time.
+     * Row y of a tile is rows[y] with column x at bit x.
+     */
+    private static final class Gen {
+        final int time;
+        final long[] rows;
+
+        Gen(int t, long[] r) {
+            time = t;
+            rows = r;
+        }
+    }
+
+    private static class Tile {
+        int idx;
+        int row0;
+        int col0;
+        int width;
+        int height;
+        Gen[] state;
+        Tile[] neighbors;
+
+        public Tile(int i, int r, int c, int w, int h) {
+            idx = i;
+            row0 = r;
+            col0 = c;
+            width = w;
+            height = h;
+            state = new Gen[3];
+            neighbors = new Tile[8];
+        }
+    }
+
+    protected int getState(int row, int col) {
+        Tile t = tiles[(row / tile) * tilesX + col / tile];
+        Gen s0 = t.state[0];
+        Gen s1 = t.state[1];
+        Gen g = s0.time < s1.time ? s1 : s0;
+        return (int)(g.rows[row - t.row0] >>> (col - t.col0)) & 0x1;
+    }
+
+    private Gen xor(int time, Gen a, Gen b, Gen[] halo) {
+        long[] rows = a.rows.clone();
+        if (b != null) {
+            for (int y = 0; y < rows.length; ++y) {
+                rows[y] ^= b.rows[y];
+            }
+        }
+        for (Gen g : halo) {
+            if (g != null) {
+                for (int y = 0; y < rows.length; ++y) {
+                    rows[y] ^= g.rows[y];
+                }
+            }
+        }
+        return new Gen(time, rows);
+    }
+
+    /**
+     * Row y of a tile extended with one halo column on each side:
+     * bit 0 is the west neighbor, bits 1..width the row itself.
+     */
+    private static long extRow(Tile t, Gen self, Gen[] halo, int y) {
+        Tile[] nb = t.neighbors;
+        long west, center, east;
+        if (y < 0) {
+            int last = nb[1].height - 1;
+            west = halo[0].rows[last] >>> (nb[0].width - 1);
+            center = halo[1].rows[last];
+            east = halo[2].rows[last];
+        }
+        else if (y == t.height) {
+            west = halo[6].rows[0] >>> (nb[6].width - 1);
+            center = halo[5].rows[0];
+            east = halo[4].rows[0];
+        }
+        else {
+            west = halo[7].rows[y] >>> (nb[7].width - 1);
+            center = self.rows[y];
+            east = halo[3].rows[y];
+        }
+        return (west & 0x1) | (center << 1) | ((east & 0x1) << (t.width + 1));
+    }
+
+    private Gen step(Tile t, Gen self, Gen[] halo) {
+        long mask = (1L << t.width) - 1;
+        long[] rows = new long[tile];
+        long a = extRow(t, self, halo, -1);
+        long b = extRow(t, self, halo, 0);
+        for (int y = 0; y < t.height; ++y) {
+            long c = extRow(t, self, halo, y + 1);
+            // Apply the rule
+            long next = rule.evolve(b, a << 1, a, a >>> 1, b << 1, b >>> 1, c << 1, c, c >>> 1);
+            rows[y] = (next >>> 1) & mask;
+            a = b;
+            b = c;
+        }
+        return new Gen(self.time + 1, rows);
+    }
+
+    private void runUnsync(int id)
+    {
+        NoSyncLife.PseudoRandom rnd = new NoSyncLife.PseudoRandom(id);
+        Tile[] next = new Tile[16];
+        Gen[] halo = new Gen[8];
+        long[] count = id == 0 ? tally : null;
+
+        // Start apart
+        Tile cur = tiles[tiles.length * id / nThreads];
+
+        mainLoop:
+        for (;;) {
+            Gen s0 = cur.state[0];
+            Gen s1 = cur.state[1];
+            Gen S0 = s0.time < s1.time ? s0 : s1;
+            Gen S1 = s0.time < s1.time ? s1 : s0;
+            Gen S2 = cur.state[2];
+
+            int TS0 = S0.time;
+            int TS1 = S1.time;
+            int TS2 = S2.time;
+            Tile[] neighbors = cur.neighbors;
+
+            if (TS2 < TS1) {
+                int off = TS1 & 0x1;
+                int cnt = 0;
+                for (int i = 0; i < neighbors.length; ++i) {
+                    Gen val = neighbors[i].state[off];
+                    if (val.time == TS1) {
+                        halo[i] = val;
+                    }
+                    else {
+                        halo[i] = null;
+                        next[cnt++] = neighbors[i];
+                    }
+                }
+                if (cnt == 0) {
+                    cur.state[2] = xor(TS1, S1, null, halo);
+                    cur = tiles[cur.idx + 1 == tiles.length ? 0 : cur.idx + 1];
+                    continue mainLoop;
+                }
+
+                if (TS2 < TS0) {
+                    cnt = 0;
+                    off = TS0 & 0x1;
+                    for (int i = 0; i < neighbors.length; ++i) {
+                        Gen val = neighbors[i].state[off];
+                        if (val.time == TS0) {
+                            halo[i] = val;
+                        }
+                        else {
+                            halo[i] = null;
+                            next[cnt++] = neighbors[i];
+                        }
+                    }
+                    if (cnt == 0) {
+                        cur.state[2] = xor(TS0, S0, null, halo);
+                        continue mainLoop;
+                    }
+                }
+                else if (TS2 == TS0) {
+                    cnt = 0;
+                    off = TS0 & 0x1;
+                    for (int i = 0; i < neighbors.length; ++i) {
+                        Gen val = neighbors[i].state[off];
+                        if (val.time == TS0) {
+                            halo[i] = val;
+                        }
+                        else {
+                            halo[i] = null;
+                            next[cnt++] = neighbors[i];
+                        }
+                    }
+                    if (cnt == 1) {
+                        next[0].state[off] = xor(TS0, S0, S2, halo);
+                        continue mainLoop;
+                    }
+                }
+                else {
+                    cnt = 0;
+                    next[cnt++] = cur;
+                    off = TS2 & 0x1;
+                    for (int i = 0; i < neighbors.length; ++i) {
+                        Gen val = neighbors[i].state[off];
+                        if (val.time == TS2) {
+                            halo[i] = val;
+                        }
+                        else {
+                            halo[i] = null;
+                            next[cnt++] = neighbors[i];
+                        }
+                    }
+                    if (cnt == 1) {
+                        next[0].state[off] = xor(TS2, S2, null, halo);
+                        continue mainLoop;
+                    }
+                }
+                cur = next[rnd.nextInt(cnt)];
+            }
+            else if (TS2 == TS1) {
+                int off = TS2 & 0x1;
+                int cnt = 0;
+                int miss = 0;
+
+                for (int i = 0; i < neighbors.length; ++i) {
+                    Gen val = neighbors[i].state[off];
+                    if (val.time == TS2) {
+                        halo[i] = val;
+                    }
+                    else {
+                        halo[i] = null;
+                        next[cnt++] = neighbors[i];
+                        miss = i;
+                    }
+                }
+                if (cnt == 1) {
+                    Gen V = xor(TS2, S1, S2, halo);
+                    next[0].state[off] = V;
+                    halo[miss] = V;
+                    cnt = 0;
+                }
+
+                int cnt2 = cnt;
+                Tile rnext = null;
+                for (Tile neighbor : neighbors) {
+                    int time = neighbor.state[2].time;
+                    if (time <= TS2) {
+                        if (time < TS2) {
+                            ++cnt2;
+                            rnext = neighbor;
+                        }
+                        if (cnt > 0) {
+                            next[cnt++] = neighbor;
+                        }
+                    }
+                }
+                if (cnt2 > 0) {
+                    cur = rnext != null ? rnext : next[rnd.nextInt(cnt)];
+                    continue mainLoop;
+                }
+
+                // Are we done?
+                if (TS1 == maxTime) {
+                    if (count != null) {
+                        Census.clear(count);
+                    }
+                    int idx = cur.idx;
+                    for (int n = 0; n < tiles.length; ++n) {
+                        if (++idx == tiles.length) idx = 0;
+                        cur = tiles[idx];
+                        Gen g = cur.state[0].time < cur.state[1].time ? cur.state[1] : cur.state[0];
+                        if (g.time != maxTime) continue mainLoop;
+                        for (int y = 0; count != null && y < cur.height; ++y) {
+                            Census.addRow(count, cur.row0 + y, cur.col0, g.rows, y, y + 1);
+                        }
+                    }
+                    return;
+                }
+
+                cur.state[1 - off] = step(cur, S1, halo);
+                cur = tiles[cur.idx + 1 == tiles.length ? 0 : cur.idx + 1];
+            }
+            else {
+                int off = TS2 & 0x1;
+                int cnt = 0;
+                for (int i = 0; i < neighbors.length; ++i) {
+                    Gen val = neighbors[i].state[off];
+                    if (val.time == TS2) {
+                        halo[i] = val;
+                    }
+                    else {
+                        cnt++;
+                        break;
+                    }
+                }
+                if (cnt == 0) {
+                    cur.state[off] = xor(TS2, S2, null, halo);
+                    continue mainLoop;
+                }
+
+                off = TS1 & 0x1;
+                for (int i = 0; i < neighbors.length; ++i) {
+                    Gen val = neighbors[i].state[off];
+                    if (val.time == TS1) {
+                        halo[i] = val;
+                    }
+                    else {
+                        continue mainLoop;
+                    }
+                }
+
+                cur.state[1 - off] = step(cur, S1, halo);
+            }
+        }
+    }
+
+    /**
+     * Census of the generation the last run ended at, or of the one the
+     * running one started from
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
+    {
+        if (census == null) {
+            census = super.getCensus();
+        }
+
+        // Run concurrently
+        runWorkers(nThreads, this::runUnsync);
+        census = new Census(epoch + maxTime, tally);
+    }
+
+    /**
+     * Tile neighbors wrapped around a torus, in the order of NoSyncLife:
+     *       -------------
+     *    +1 | 6 | 5 | 4 |
+     *       -------------
+     *     r | 7 |   | 3 |
+     *       -------------
+     *    -1 | 0 | 1 | 2 |
+     *       -------------
+     *        -1   c  +1
+     */
+    private int getNeighbor(int idx, int i)
+    {
+        int tilesY = tiles.length / tilesX;
+        int r = idx / tilesX;
+        int c = idx % tilesX;
+        switch (i) {
+            case 0:
+                if (--c < 0) c += tilesX;
+            case 1:
+                if (--r < 0) r += tilesY;
+                break;
+            case 2:
+                if (--r < 0) r += tilesY;
+            case 3:
+                if (++c == tilesX) c = 0;
+                break;
+            case 4:
+                if (++c == tilesX) c = 0;
+            case 5:
+                if (++r == tilesY) r = 0;
+                break;
+            case 6:
+                if (++r == tilesY) r = 0;
+            case 7:
+                if (--c < 0) c += tilesX;
+                break;
+        }
+        return r * tilesX + c;
+    }
+
+    public TiledNoSyncLife(int w, int h, int t, int p, boolean v, int[] s)
+    {
+        this(w, h, t, p, v, s, tileSize);
+    }
+
+    public TiledNoSyncLife(int w, int h, int t, int p, boolean v, int[] s, int size)
+    {
+        super(w, h, t, p, v);
+        if (size < 1 || size > MAX_TILE) {
+            throw new IllegalArgumentException("tile size must be between 1 and " + MAX_TILE + ": " + size);
+        }
+
+        // Initialize tiles
+        tile = size;
+        tilesX = (Width + tile - 1) / tile;
+        int tilesY = (Height + tile - 1) / tile;
+        tiles = new Tile[tilesX * tilesY];
+        for (int idx = 0; idx < tiles.length; ++idx) {
+            int r0 = idx / tilesX * tile;
+            int c0 = idx % tilesX * tile;
+            tiles[idx] = new Tile(idx, r0, c0, Math.min(tile, Width - c0), Math.min(tile, Height - r0));
+        }
+        for (Tile cell : tiles) {
+            for (int n = 0; n < cell.neighbors.length; ++n) {
+                cell.neighbors[n] = tiles[getNeighbor(cell.idx, n)];
+            }
+        }
+        init(s);
+    }
+
+    /**
+     * Contents of all tiles at T0 and their parity with the halo
+     */
+    private void init(int[] s) {
+        int off = T0 & 0x1;
+        for (Tile cell : tiles) {
+            long[] rows = new long[tile];
+            for (int y = 0; s != null && y < cell.height; ++y) {
+                for (int x = 0; x < cell.width; ++x) {
+                    if (s[(cell.row0 + y) * Width + cell.col0 + x] != 0) {
+                        rows[y] |= 1L << x;
+                    }
+                }
+            }
+            cell.state[1 - off] = new Gen(T0 - 1, new long[tile]);
+            cell.state[off] = new Gen(T0, rows);
+        }
+        for (Tile cell : tiles) {
+            seedParity(cell);
+        }
+    }
+
+    /**
+     * Parity of a tile with its halo at T0
+     */
+    private void seedParity(Tile cell) {
+        int off = T0 & 0x1;
+        Gen[] halo = new Gen[8];
+        for (int n = 0; n < cell.neighbors.length; ++n) {
+            halo[n] = cell.neighbors[n].state[off];
+        }
+        cell.state[2] = xor(T0, cell.state[off], null, halo);
+    }
+
+    /**
+     * A cell coming alive changes the parity of its tile and of every tile
+     * it is the halo of
+     */
+    protected void setAlive(int row, int col) {
+        Tile t = tiles[(row / tile) * tilesX + col / tile];
+        t.state[T0 & 0x1].rows[row - t.row0] |= 1L << (col - t.col0);
+        seedParity(t);
+        for (Tile neighbor : t.neighbors) {
+            seedParity(neighbor);
+        }
+    }
+
+    protected void setState(int[] s) {
+        init(s);
+        census = null;
+    }
+
+    public static void main(String[] args) {
+        type = Type.NOSYNC_TILED;
+        Life.main(args);
+    }
+}
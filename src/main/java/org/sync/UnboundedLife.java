@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Synchronous parallel implementation of Life on the unbounded plane
+ *
+ * The plane is stored as a sparse set of 64x64 chunks, one long word per
+ * chunk row, computed with the bit-sliced rule of BitwiseLife. Absent chunks
+ * are dead. After every generation a chunk is allocated next to any chunk
+ * with live cells on the facing border, and chunks that are dead and not
+ * needed by a neighbor are freed, so memory follows the footprint of the
+ * pattern. The Width x Height grid is only the window reported by getResult.
+ * Rules with B0 would fill the whole plane and are rejected.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class UnboundedLife extends Life {
+
+    private static final int SHIFT = 6;
+    private static final int SIZE = 1 << SHIFT;
+    private static final int[] DX = { -1, 0, 1, 1, 1, 0, -1, -1 };
+    private static final int[] DY = { -1, -1, -1, 0, 1, 1, 1, 0 };
+
+    private final HashMap<Long, Chunk> chunks = new HashMap<>();
+
+    /**
+     * Copy of chunks published after every generation for the Renderer, which
+     * samples cells while the barrier action adds and removes chunks. Null
+     * when nothing renders or while cells are being set up.
+     */
+    private volatile HashMap<Long, Chunk> view;
+    private Chunk[] list;
+    private int mark;
+    private CyclicBarrier barrier;
+    private int generation;
+    private final long[][] tallies;
+    private volatile Census census;
+
+    private static final class Chunk {
+        final int cx;
+        final int cy;
+        long[] cur = new long[SIZE];
+        long[] next = new long[SIZE];
+        final Chunk[] neighbors = new Chunk[8];
+        boolean alive;
+        int border;
+        int mark;
+
+        Chunk(int x, int y) {
+            cx = x;
+            cy = y;
+        }
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private Chunk getChunk(int cx, int cy) {
+        return chunks.get(key(cx, cy));
+    }
+
+    protected int getState(int row, int col) {
+        HashMap<Long, Chunk> map = view;
+        Chunk c = (map != null ? map : chunks).get(key(col >> SHIFT, row >> SHIFT));
+        if (c == null) {
+            return STATE0;
+        }
+        return (int)(c.cur[row & (SIZE - 1)] >>> (col & (SIZE - 1))) & 0x1;
+    }
+
+    /**
+     * Allocate the chunk of a live cell and its neighbors
+     */
+    protected void setAlive(int row, int col) {
+        int cx = col >> SHIFT;
+        int cy = row >> SHIFT;
+        view = null;
+        for (int dy = -1; dy <= 1; ++dy) {
+            for (int dx = -1; dx <= 1; ++dx) {
+                chunks.computeIfAbsent(key(cx + dx, cy + dy), k -> new Chunk((int)(k >> 32), (int)(long)k));
+            }
+        }
+        getChunk(cx, cy).cur[row & (SIZE - 1)] |= 1L << (col & (SIZE - 1));
+    }
+
+    /**
+     * Number of chunks currently allocated
+     */
+    int getChunkCount() {
+        return chunks.size();
+    }
+
+    private static long[] rows(Chunk c) {
+        return c == null ? null : c.cur;
+    }
+
+    private static long row(long[] rows, int r) {
+        return rows == null ? 0 : rows[r];
+    }
+
+    /**
+     * Compute the next state of a chunk; mid, west and east are
+     * scratch columns of SIZE+2 rows including the rows above and below.
+     */
+    private void update(Chunk chunk, long[] mid, long[] west, long[] east, long[] tally) {
+        Chunk[] nb = chunk.neighbors;
+        long[] w = rows(nb[7]);
+        long[] e = rows(nb[3]);
+        mid[0] = row(rows(nb[1]), SIZE - 1);
+        west[0] = row(rows(nb[0]), SIZE - 1);
+        east[0] = row(rows(nb[2]), SIZE - 1);
+        for (int r = 0; r < SIZE; ++r) {
+            mid[r + 1] = chunk.cur[r];
+            west[r + 1] = row(w, r);
+            east[r + 1] = row(e, r);
+        }
+        mid[SIZE + 1] = row(rows(nb[5]), 0);
+        west[SIZE + 1] = row(rows(nb[6]), 0);
+        east[SIZE + 1] = row(rows(nb[4]), 0);
+
+        long any = 0;
+        long westCol = 0;
+        long eastCol = 0;
+        long[] dst = chunk.next;
+        for (int r = 0; r < SIZE; ++r) {
+            long next = rule.evolve(mid[r + 1],
+                    mid[r] << 1 | west[r] >>> 63, mid[r], mid[r] >>> 1 | east[r] << 63,
+                    mid[r + 1] << 1 | west[r + 1] >>> 63, mid[r + 1] >>> 1 | east[r + 1] << 63,
+                    mid[r + 2] << 1 | west[r + 2] >>> 63, mid[r + 2], mid[r + 2] >>> 1 | east[r + 2] << 63);
+            dst[r] = next;
+            if (next != 0) {
+                Census.addRow(tally, (long)chunk.cy * SIZE + r, (long)chunk.cx * SIZE, dst, r, r + 1);
+                if (periodWindow > 0) {
+                    Census.hash(tally, mix(key(chunk.cx, chunk.cy) * SIZE + r) ^ next);
+                }
+            }
+            any |= next;
+            westCol |= next;
+            eastCol |= next;
+        }
+        westCol &= 0x1;
+        eastCol >>>= 63;
+
+        // Borders with live cells in the order of neighbors
+        long top = dst[0];
+        long bottom = dst[SIZE - 1];
+        int border = 0;
+        if ((top & 0x1) != 0) border |= 1 << 0;
+        if (top != 0) border |= 1 << 1;
+        if ((top >>> 63) != 0) border |= 1 << 2;
+        if (eastCol != 0) border |= 1 << 3;
+        if ((bottom >>> 63) != 0) border |= 1 << 4;
+        if (bottom != 0) border |= 1 << 5;
+        if ((bottom & 0x1) != 0) border |= 1 << 6;
+        if (westCol != 0) border |= 1 << 7;
+        chunk.border = border;
+        chunk.alive = any != 0;
+    }
+
+    private void runStaticSchedule(int id) {
+
+        long[] mid = new long[SIZE + 2];
+        long[] west = new long[SIZE + 2];
+        long[] east = new long[SIZE + 2];
+        long[] tally = Census.newTally();
+        tallies[id] = tally;
+
+        for (int time = current + 1; time <= maxTime; ++time) {
+
+            Chunk[] work = list;
+            Census.clear(tally);
+            for (int i = id; i < work.length; i += nThreads) {
+                update(work[i], mid, west, east, tally);
+            }
+
+            try {
+                barrier.await();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR in thread " + id);
+                ex.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    protected boolean hasGenerationHook() {
+        return true;
+    }
+
+    /**
+     * Census of the last generation completed, with rows and columns of the plane
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    /**
+     * Barrier action: switch buffers, add up the tallies of the generation,
+     * look for a cycle, then grow and shrink the set of chunks
+     */
+    private void nextGeneration() {
+        ++generation;
+        census = new Census(epoch + generation, tallies);
+        onGeneration(generation, Census.hashOf(tallies), Census.checkOf(tallies), generation);
+        ++mark;
+        for (Chunk c : list) {
+            long[] tmp = c.cur;
+            c.cur = c.next;
+            c.next = tmp;
+        }
+
+        // Keep live chunks and the neighbors their live borders reach
+        for (Chunk c : list) {
+            if (!c.alive) {
+                continue;
+            }
+            c.mark = mark;
+            for (int i = 0; i < 8; ++i) {
+                if ((c.border & (1 << i)) != 0) {
+                    Chunk n = getChunk(c.cx + DX[i], c.cy + DY[i]);
+                    if (n == null) {
+                        n = new Chunk(c.cx + DX[i], c.cy + DY[i]);
+                        chunks.put(key(n.cx, n.cy), n);
+                    }
+                    n.mark = mark;
+                }
+            }
+        }
+        chunks.values().removeIf(c -> c.mark != mark);
+        relink();
+    }
+
+    public void setRule(Rule r) {
+        if (r.hasB0()) {
+            throw new IllegalArgumentException("rule " + r + " does not keep the plane finite");
+        }
+        super.setRule(r);
+    }
+
+    private void relink() {
+        list = chunks.values().toArray(new Chunk[0]);
+        for (Chunk c : list) {
+            for (int i = 0; i < 8; ++i) {
+                c.neighbors[i] = getChunk(c.cx + DX[i], c.cy + DY[i]);
+            }
+        }
+        view = vis || frameDir != null ? new HashMap<>(chunks) : null;
+    }
+
+    protected void run()
+    {
+        generation = current;
+        relink();
+
+        // Run concurrently
+        runWorkers(nThreads, this::runStaticSchedule);
+    }
+
+    protected void setState(int[] s) {
+        view = null;
+        chunks.clear();
+        census = null;
+        for (int r = 0; r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                if (s[r * Width + c] != 0) {
+                    setAlive(r, c);
+                }
+            }
+        }
+    }
+
+    public UnboundedLife(int w, int h, int t, int p, boolean v, int[] s) {
+        super(w, h, t, p, v);
+
+        for (int r = 0; s != null && r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                if (s[r * Width + c] != 0) {
+                    setAlive(r, c);
+                }
+            }
+        }
+
+        tallies = new long[nThreads][];
+        barrier = new CyclicBarrier(nThreads, this::nextGeneration);
+    }
+
+    public static void main(String[] args) {
+        type = Type.UNBOUNDED;
+        Life.main(args);
+    }
+}
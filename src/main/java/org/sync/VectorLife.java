@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Synchronous parallel implementation of Life over byte rows for SIMD
+ *
+ * The schedule is the one of OrdinaryLife: static stripes of rows separated
+ * by a barrier per generation. Cells are one byte each in rows padded with
+ * a ghost cell at either end, a copy of the cell at the opposite end of the
+ * row, so that a run of cells and its neighbors are contiguous loads.
+ *
+ * On Java 17 and later, with --add-modules jdk.incubator.vector, rows are
+ * updated by VectorRowKernel from the versioned part of the multi-release
+ * jar with as many cells per instruction as the preferred vector holds.
+ * Otherwise, or in a Java 8 build, the scalar loop of this class is used.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+public class VectorLife extends Life {
+
+    /**
+     * Update of cells [from, to) of a row: north, mid and south are offsets
+     * of the rows of the ghost cells at index 0. Returns the number of cells
+     * alive in the next state.
+     */
+    interface RowKernel {
+        int update(byte[] src, byte[] dst, int north, int mid, int south, int from, int to, int[] table);
+    }
+
+    static final RowKernel KERNEL = loadKernel();
+
+    private final int stride;
+    private final byte[] cells;
+    private final byte[] alt;
+    private CyclicBarrier barrier;
+    private boolean useAlt;
+    private int generation;
+    private final long[][] tallies;
+    private volatile Census census;
+
+    private static RowKernel loadKernel() {
+        try {
+            return (RowKernel)Class.forName("org.sync.VectorRowKernel").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return VectorLife::updateCells;
+        }
+    }
+
+    /**
+     * Whether rows are updated with the Vector API
+     */
+    public static boolean isVectorized() {
+        return !KERNEL.getClass().getName().startsWith(VectorLife.class.getName());
+    }
+
+    static int updateCells(byte[] src, byte[] dst, int north, int mid, int south, int from, int to, int[] table) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            int sum = src[north + i - 1] + src[north + i] + src[north + i + 1]
+                    + src[mid + i - 1] + src[mid + i + 1]
+                    + src[south + i - 1] + src[south + i] + src[south + i + 1];
+
+            // Apply the rule
+            int state = table[(sum << 1) | src[mid + i]];
+            dst[mid + i] = (byte)state;
+            count += state;
+        }
+        return count;
+    }
+
+    protected int getState(int row, int col) {
+        byte[] buf = useAlt ? alt : cells;
+        return buf[row * stride + col + 1];
+    }
+
+    protected void setAlive(int row, int col) {
+        cells[row * stride + col + 1] = STATE1;
+        setGhosts(cells, row * stride);
+    }
+
+    private void setGhosts(byte[] buf, int mid) {
+        buf[mid] = buf[mid + Width];
+        buf[mid + Width + 1] = buf[mid + 1];
+    }
+
+    private void runStaticSchedule(int id) {
+
+        int minRow = (int)((long)id * Height / nThreads);
+        int maxRow = (int)((long)(id + 1) * Height / nThreads);
+        RowKernel kernel = KERNEL;
+        int[] table = rule.table;
+        long[] tally = Census.newTally();
+        tallies[id] = tally;
+        boolean hashing = periodWindow > 0;
+
+        for (int time = current + 1; time <= maxTime; ++time) {
+
+            byte[] src = useAlt ? alt : cells;
+            byte[] dst = useAlt ? cells : alt;
+            Census.clear(tally);
+            for (int r = minRow; r < maxRow; ++r) {
+                int mid = r * stride;
+                int north = (r == 0 ? Height - 1 : r - 1) * stride;
+                int south = (r == Height - 1 ? 0 : r + 1) * stride;
+                int count = kernel.update(src, dst, north, mid, south, 1, Width + 1, table);
+                setGhosts(dst, mid);
+                if (count != 0) {
+                    Census.addRow(tally, r, count, dst, mid + 1, mid + Width + 1);
+                    for (int c = 0; hashing && c < Width; ++c) {
+                        if (dst[mid + c + 1] != 0) {
+                            Census.hash(tally, (long)r * Width + c);
+                        }
+                    }
+                }
+            }
+
+            try {
+                barrier.await();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR in thread " + id);
+                ex.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Barrier action: switch layers, add up the tallies of the generation,
+     * look for a cycle and take a checkpoint if one is due
+     */
+    private void nextGeneration() {
+        useAlt = !useAlt;
+        ++generation;
+        census = new Census(epoch + generation, tallies);
+        onGeneration(generation, Census.hashOf(tallies), Census.checkOf(tallies), generation);
+        if (isCheckpointDue(generation)) {
+            saveCheckpoint(getCheckpoint(generation));
+        }
+    }
+
+    protected boolean hasGenerationHook() {
+        return true;
+    }
+
+    protected boolean takesCheckpoints() {
+        return true;
+    }
+
+    /**
+     * Census of the last generation completed
+     */
+    public Census getCensus() {
+        Census c = census;
+        return c != null ? c : super.getCensus();
+    }
+
+    protected void run()
+    {
+        generation = current;
+
+        // Run concurrently
+        runWorkers(nThreads, this::runStaticSchedule);
+        awaitCheckpoint();
+    }
+
+    protected void setState(int[] s) {
+        for (int r = 0; r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                cells[r * stride + c + 1] = (byte)(s[r * Width + c] == 0 ? STATE0 : STATE1);
+            }
+            setGhosts(cells, r * stride);
+        }
+        useAlt = false;
+        generation = T0;
+        census = null;
+    }
+
+    public VectorLife(int w, int h, int t, int p, boolean v, int[] s) {
+        super(w, h, t, p, v);
+
+        // Rows with ghost cells
+        stride = Width + 2;
+        cells = new byte[Height * stride];
+        alt = new byte[Height * stride];
+        for (int r = 0; s != null && r < Height; ++r) {
+            for (int c = 0; c < Width; ++c) {
+                cells[r * stride + c + 1] = (byte)(s[r * Width + c] == 0 ? STATE0 : STATE1);
+            }
+            setGhosts(cells, r * stride);
+        }
+        useAlt = false;
+        generation = T0;
+        tallies = new long[nThreads][];
+
+        barrier = new CyclicBarrier(nThreads, this::nextGeneration);
+    }
+
+    public static void main(String[] args) {
+        type = Type.VECTOR;
+        Life.main(args);
+    }
+}
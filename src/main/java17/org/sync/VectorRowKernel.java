@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Oleg Mazurov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sync;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Row update of VectorLife with the Vector API
+ *
+ * The neighbor sum of a vector of cells is the sum of eight unaligned loads.
+ * The next state is selected by comparing the sum with every count of the
+ * rule, birth for dead cells and survival for live ones; the remainder of
+ * a row goes through the scalar loop.
+ *
+ * https://github.com/OlegMazurov/Koyaanisqatsi
+ *
+ */
+
+final class VectorRowKernel implements VectorLife.RowKernel {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    public int update(byte[] src, byte[] dst, int north, int mid, int south, int from, int to, int[] table) {
+        int len = SPECIES.length();
+        int count = 0;
+        int i = from;
+        for (; i + len <= to; i += len) {
+            ByteVector sum = ByteVector.fromArray(SPECIES, src, north + i - 1)
+                    .add(ByteVector.fromArray(SPECIES, src, north + i))
+                    .add(ByteVector.fromArray(SPECIES, src, north + i + 1))
+                    .add(ByteVector.fromArray(SPECIES, src, mid + i - 1))
+                    .add(ByteVector.fromArray(SPECIES, src, mid + i + 1))
+                    .add(ByteVector.fromArray(SPECIES, src, south + i - 1))
+                    .add(ByteVector.fromArray(SPECIES, src, south + i))
+                    .add(ByteVector.fromArray(SPECIES, src, south + i + 1));
+            VectorMask<Byte> alive = ByteVector.fromArray(SPECIES, src, mid + i).compare(VectorOperators.NE, 0);
+
+            // Apply the rule
+            VectorMask<Byte> next = SPECIES.maskAll(false);
+            for (int n = 0; n <= 8; ++n) {
+                int born = table[n << 1];
+                int kept = table[(n << 1) | 1];
+                if ((born | kept) == 0) {
+                    continue;
+                }
+                VectorMask<Byte> eq = sum.compare(VectorOperators.EQ, n);
+                next = next.or(born == 0 ? eq.and(alive) : kept == 0 ? eq.andNot(alive) : eq);
+            }
+            ByteVector.zero(SPECIES).blend((byte)1, next).intoArray(dst, mid + i);
+            count += next.trueCount();
+        }
+        return count + VectorLife.updateCells(src, dst, north, mid, south, i, to, table);
+    }
+}
@@ -20,6 +20,18 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Arrays;
+
 public class LifeTest {
 
     @Test(timeout = 60000)
@@ -41,6 +53,46 @@ public class LifeTest {
         sample = Life.fromRLE(acorn, Life.Type.NOSYNC,100, 8, false);
         sample.execute();
         Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.NOSYNC_FLAT, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.BITWISE, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.NOSYNC_TILED, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.NOWAIT_BLOCK, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.ORDINARY_P2P, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.HASHLIFE, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.BITWISE_ACTIVE, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.UNBOUNDED, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.ORDINARY_OFFHEAP, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        sample = Life.fromRLE(acorn, Life.Type.NOSYNC_OFFHEAP, 100, 8, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
     }
 
     private void testLong(int generations, Life.Type type) {
@@ -51,7 +103,7 @@ public class LifeTest {
         sample.execute();
         long time1 = System.currentTimeMillis() - start;
         System.out.println(", base time: " + time1 + " ms");
-        String[] golden = sample.getResult();
+        Checkpoint golden = sample.getSnapshot();
 
         for (int p = 2; p <= 512; p *= 2) {
             System.out.print("Running " + type + " for " + generations +" generations with " + p + " threads");
@@ -60,7 +112,7 @@ public class LifeTest {
             sample.execute();
             long time = System.currentTimeMillis() - start;
 
-            Assert.assertArrayEquals(golden, sample.getResult());
+            Assert.assertEquals(golden, sample.getSnapshot());
 
             System.out.println(", time: " + time + " ms, speedup: " + (100 * time1 / time)/100d);
         }
@@ -82,6 +134,694 @@ public class LifeTest {
         testLong(2000, Life.Type.NOWAIT);
     }
 
+    @Test(timeout = 300000)
+    public void testLongNoSyncFlat() {
+        testLong(2000, Life.Type.NOSYNC_FLAT);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongBitwise() {
+        testLong(2000, Life.Type.BITWISE);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongNoSyncTiled() {
+        testLong(2000, Life.Type.NOSYNC_TILED);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongNoWaitBlock() {
+        testLong(2000, Life.Type.NOWAIT_BLOCK);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongOrdinaryP2P() {
+        testLong(2000, Life.Type.ORDINARY_P2P);
+    }
+
+    @Test(timeout = 120000)
+    public void testHashLife() throws Exception {
+        // Cross-check long runs on the torus, including odd grid sizes
+        RLE acorn = RLE.getAcorn();
+        for (int generations : new int[] { 2000, 2806 }) {
+            Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, generations, 8, false);
+            sample.execute();
+            String[] golden = sample.getResult();
+
+            sample = Life.fromRLE(acorn, Life.Type.HASHLIFE, generations, 1, false);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+        }
+
+        RLE counter = RLE.fromFile("DecimalCounter.rle");
+        Life sample = Life.fromRLE(counter, Life.Type.NOSYNC_TILED, 860, 600, 3000, 8, false);
+        sample.execute();
+        String[] golden = sample.getResult();
+
+        sample = Life.fromRLE(counter, Life.Type.HASHLIFE, 860, 600, 3000, 1, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+
+        // A glider crosses a 1024x1024 torus 244 times in a million generations
+        // and is where it is after 576, steps of aligned grids reuse the last one
+        File file = File.createTempFile("glider", ".rle");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write("x = 3, y = 3, rule = B3/S23\nbo$2bo$3o!\n");
+        }
+        RLE glider = RLE.fromFile(file.getPath());
+        sample = Life.fromRLE(glider, Life.Type.BITWISE, 1024, 1024, 576, 1, false);
+        sample.execute();
+        golden = sample.getResult();
+
+        sample = Life.fromRLE(glider, Life.Type.HASHLIFE, 1024, 1024, 1000000, 1, false);
+        sample.runUntil(500000);
+        sample.runUntil(1000000);
+        Assert.assertEquals(1000000, sample.getTime());
+        Assert.assertArrayEquals(golden, sample.getResult());
+    }
+
+    @Test(timeout = 300000)
+    public void testLongVector() {
+        testLong(2000, Life.Type.VECTOR);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongChannel() {
+        testLong(2000, Life.Type.CHANNEL);
+    }
+
+    @Test(timeout = 300000)
+    public void testLongBitwiseActive() {
+        testLong(2000, Life.Type.BITWISE_ACTIVE);
+    }
+
+    @Test(timeout = 60000)
+    public void testActivity() {
+        // Random soups settle into still lifes and oscillators long before the end
+        for (int seed = 1; seed <= 4; ++seed) {
+            RLE soup = RLE.getRandom(100 + seed, 70, seed);
+            Life sample = Life.fromRLE(soup, Life.Type.BITWISE, 5000, 1, false);
+            sample.execute();
+            String[] golden = sample.getResult();
+
+            sample = Life.fromRLE(soup, Life.Type.BITWISE_ACTIVE, 5000, 4, false);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+        }
+
+        // A block stops being a still life under B2/S
+        int[] block = new int[64 * 64];
+        for (int idx : new int[] { 30 * 64 + 30, 30 * 64 + 31, 31 * 64 + 30, 31 * 64 + 31 }) {
+            block[idx] = 1;
+        }
+        String[] golden = null;
+        for (Life.Type type : new Life.Type[] { Life.Type.BITWISE, Life.Type.BITWISE_ACTIVE }) {
+            Life sample = Life.fromRLE(RLE.getRandom(64, 64, 1), type, 20, 1, false);
+            sample.execute();
+            sample.reset(block);
+            sample.execute();
+            Assert.assertEquals(type.toString(), 20, sample.getTime());
+            if (type == Life.Type.BITWISE_ACTIVE) {
+                // Only the generation that found nothing changed is computed
+                Assert.assertEquals(type.toString(), 1, sample.getComputed());
+                sample.advance(5);
+                Assert.assertEquals(type.toString(), 1, sample.getComputed());
+            }
+            sample.setRule(Rule.parse("B2/S"));
+            sample.advance(3);
+            if (golden == null) {
+                golden = sample.getResult();
+            }
+            Assert.assertArrayEquals(type.toString(), golden, sample.getResult());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testUnbounded() {
+        // Acorn does not reach around a torus of 2048 in 2000 generations
+        RLE acorn = RLE.getAcorn();
+        int size = 2048;
+        int offset = (size - acorn.getW()) / 2;
+        Life sample = Life.fromRLE(acorn, Life.Type.BITWISE, size, size, 2000, 1, false);
+        sample.execute();
+        String[] torus = sample.getResult();
+        String[] golden = new String[acorn.getH()];
+        for (int r = 0; r < golden.length; ++r) {
+            golden[r] = torus[r + offset].substring(offset, offset + acorn.getW());
+        }
+
+        for (int p = 1; p <= 4; p *= 2) {
+            UnboundedLife plane = (UnboundedLife)Life.fromRLE(acorn, Life.Type.UNBOUNDED, 2000, p, false);
+            plane.execute();
+            Assert.assertArrayEquals(golden, plane.getResult());
+
+            // Chunks follow the pattern, not the torus
+            Assert.assertTrue(plane.getChunkCount() < (size / 64) * (size / 64) / 4);
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testMappedFile() throws Exception {
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.BITWISE, 1000, 1, false);
+        sample.execute();
+        String[] golden = sample.getResult();
+
+        File file = File.createTempFile("life", ".bin");
+        file.deleteOnExit();
+        Life.mapFile = file.getPath();
+        try {
+            sample = Life.fromRLE(acorn, Life.Type.ORDINARY_OFFHEAP, 1000, 4, false);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+
+            sample = Life.fromRLE(acorn, Life.Type.NOSYNC_OFFHEAP, 1000, 4, false);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+            Assert.assertEquals(4L * 3 * acorn.getW() * acorn.getH(), file.length());
+
+            // More cells than an array holds, none of them in an array on the heap
+            int size = 50000;
+            sample = Life.fromRLE(acorn, Life.Type.ORDINARY_OFFHEAP, size, size, 0, 4, false);
+            sample.setAlive(size - 1, size - 1);
+            Assert.assertTrue((long)(size - 1) * size + size - 1 > Integer.MAX_VALUE);
+            Assert.assertEquals(8L * size * size, file.length());
+            Assert.assertEquals(1, sample.getState(size - 1, size - 1));
+            Assert.assertEquals(0, sample.getState(size - 1, size - 2));
+            int x0 = (size - acorn.getW()) / 2;
+            int y0 = (size - acorn.getH()) / 2;
+            for (int y = 0; y < acorn.getH(); ++y) {
+                for (int x = 0; x < acorn.getW(); ++x) {
+                    Assert.assertEquals(acorn.getState(x, y), sample.getState(y + y0, x + x0));
+                }
+            }
+        }
+        finally {
+            Life.mapFile = null;
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testCheckpoint() throws Exception {
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.BITWISE, 1000, 1, false);
+        sample.execute();
+        String[] golden = sample.getResult();
+
+        File file = File.createTempFile("life", ".ckpt");
+        file.deleteOnExit();
+        Life.checkpointFile = file.getPath();
+        Life.checkpointInterval = 100;
+        try {
+            for (Life.Type type : new Life.Type[] { Life.Type.NOSYNC, Life.Type.ORDINARY, Life.Type.BITWISE }) {
+                file.delete();
+                Life checkpointed = Life.fromRLE(acorn, type, 1000, 4, false);
+                checkpointed.execute();
+                Assert.assertArrayEquals(golden, checkpointed.getResult());
+
+                // A consistent generation, and the run continues from it
+                Checkpoint cp = Checkpoint.read(file.getPath());
+                Assert.assertEquals(0, cp.getTime() % 100);
+                Assert.assertTrue(cp.getTime() > 0 && cp.getTime() < 1000);
+                Life part = Life.fromRLE(acorn, Life.Type.BITWISE, cp.getTime(), 1, false);
+                part.execute();
+                Assert.assertArrayEquals(toState(part.getResult()), cp.getState());
+
+                // The plane is not a torus
+                for (Life.Type resumed : Life.Type.values()) {
+                    if (resumed == Life.Type.UNBOUNDED) {
+                        continue;
+                    }
+                    Life.checkpointFile = null;
+                    sample = Life.fromCheckpoint(cp, resumed, 1000, 4, false);
+                    sample.execute();
+                    Assert.assertArrayEquals(golden, sample.getResult());
+                    Life.checkpointFile = file.getPath();
+                }
+
+                // Nothing is recorded for a checkpoint any more once they are off
+                Life.checkpointFile = null;
+                checkpointed.reset(acorn);
+                checkpointed.execute();
+                Assert.assertArrayEquals(type.toString(), golden, checkpointed.getResult());
+                Life.checkpointFile = file.getPath();
+            }
+
+            // Engines that say they take checkpoints write them, others write nothing
+            for (Life.Type type : Life.Type.values()) {
+                file.delete();
+                Life checkpointed = Life.fromRLE(acorn, type, 300, 4, false);
+                checkpointed.execute();
+                Assert.assertEquals(type.toString(), checkpointed.takesCheckpoints(), file.exists());
+            }
+        }
+        finally {
+            Life.checkpointFile = null;
+            Life.checkpointInterval = 1000;
+        }
+    }
+
+    private static int[] toState(String[] result) {
+        int w = result[0].length();
+        int[] state = new int[result.length * w];
+        for (int r = 0; r < result.length; ++r) {
+            for (int c = 0; c < w; ++c) {
+                state[r * w + c] = result[r].charAt(c) - '0';
+            }
+        }
+        return state;
+    }
+
+    @Test(timeout = 60000)
+    public void testRLE() throws Exception {
+        File file = File.createTempFile("life", ".rle");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write("#N Glider\r\n#C twice\r\nx = 12, y = 6, rule = B3/S23\r\nbo$2bo$3o7b2o2$\r\n10b\n2o!\n");
+        }
+        RLE rle = RLE.fromFile(file.getPath());
+        Assert.assertEquals(12, rle.getW());
+        Assert.assertEquals(6, rle.getH());
+        int[] expected = new int[12 * 6];
+        for (int idx : new int[] { 1, 12 + 2, 24, 24 + 1, 24 + 2, 24 + 10, 24 + 11, 48 + 10, 48 + 11 }) {
+            expected[idx] = 1;
+        }
+        Assert.assertArrayEquals(expected, rle.getState());
+
+        // Live cells go straight into the bit-packed engine
+        RLE counter = RLE.fromFile("DecimalCounter.rle");
+        Life sample = Life.fromRLE(counter, Life.Type.NOSYNC_TILED, 300, 4, false);
+        sample.execute();
+        String[] golden = sample.getResult();
+
+        sample = Life.fromRLE(counter, Life.Type.BITWISE, 300, 4, false);
+        sample.execute();
+        Assert.assertArrayEquals(golden, sample.getResult());
+    }
+
+    @Test(timeout = 120000)
+    public void testRules() throws Exception {
+        Assert.assertEquals(Rule.LIFE, Rule.parse("23/3"));
+        Assert.assertEquals("B36/S23", Rule.parse("s23/b63").toString());
+
+        // The header rule is honored: under B1/S a single cell only gives birth
+        File file = File.createTempFile("life", ".rle");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write("x = 5, y = 5, rule = B1/S:T5,5\n5b$5b$2bo!\n");
+        }
+        RLE rle = RLE.fromFile(file.getPath());
+        Assert.assertEquals(Rule.parse("B1/S"), rle.getRule());
+        Life sample = Life.fromRLE(rle, Life.Type.ORDINARY, 1, 1, false);
+        sample.execute();
+        Assert.assertArrayEquals(new String[] { "00000", "01110", "01010", "01110", "00000" }, sample.getResult());
+
+        // Rules of other families are read as Life
+        try (Writer out = new FileWriter(file)) {
+            out.write("x = 5, y = 5, rule = 345/2/4\n5b$5b$2bo!\n");
+        }
+        rle = RLE.fromFile(file.getPath());
+        Assert.assertEquals(Rule.LIFE, rle.getRule());
+        Assert.assertEquals(1, rle.getState(2, 2));
+
+        // HighLife, Day & Night and a rule with B0 on all engines of the torus
+        RLE soup = RLE.getRandom(100, 70, 1);
+        for (String str : new String[] { "B36/S23", "B3678/S34678", "B03/S23" }) {
+            Rule rule = Rule.parse(str);
+            sample = Life.fromRLE(soup, Life.Type.ORDINARY, 200, 1, false);
+            sample.setRule(rule);
+            sample.execute();
+            Checkpoint golden = sample.getSnapshot();
+            Assert.assertEquals(rule, golden.getRule());
+
+            for (Life.Type type : Life.Type.values()) {
+                if (type == Life.Type.UNBOUNDED) {
+                    continue;
+                }
+                sample = Life.fromRLE(soup, type, 200, 4, false);
+                sample.setRule(rule);
+                sample.execute();
+                Assert.assertEquals(type + " " + rule, golden, sample.getSnapshot());
+            }
+        }
+
+        try {
+            Life.fromRLE(soup, Life.Type.UNBOUNDED, 200, 1, false).setRule(Rule.parse("B03/S23"));
+            Assert.fail();
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testAdvance() {
+        // Runs continued in steps end where a single run does
+        RLE acorn = RLE.getAcorn();
+        for (Life.Type type : Life.Type.values()) {
+            Life sample = Life.fromRLE(acorn, type, 250, 4, false);
+            sample.execute();
+            String[] golden = sample.getResult();
+
+            sample = Life.fromRLE(acorn, type, 100, 4, false);
+            sample.execute();
+            Assert.assertEquals(100, sample.getTime());
+            sample.advance(0);
+            sample.advance(50);
+            sample.runUntil(250);
+            Assert.assertEquals(250, sample.getTime());
+            Assert.assertArrayEquals(type.toString(), golden, sample.getResult());
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testWorkers() {
+        // Threads of the first run carry out the later ones too: starting
+        // them anew would take 4 threads a run, the JVM may start a few
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        RLE acorn = RLE.getAcorn();
+        for (Life.Type type : Life.Type.values()) {
+            if (type == Life.Type.CHANNEL && ChannelLife.isVirtual()) {
+                continue;
+            }
+            try (Life sample = Life.fromRLE(acorn, type, 20, 4, false)) {
+                sample.execute();
+                long started = threads.getTotalStartedThreadCount();
+                for (int i = 0; i < 20; ++i) {
+                    sample.advance(1);
+                }
+                Assert.assertTrue(type.toString(), threads.getTotalStartedThreadCount() - started < 20);
+            }
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testReset() throws Exception {
+        // A reset engine runs like a new one
+        RLE acorn = RLE.getAcorn();
+        RLE soup = RLE.getRandom(acorn.getW() / 2, acorn.getH() / 2, 7);
+        RLE cycling = RLE.getRandom(60, 60, 2);
+        RLE other = RLE.getRandom(60, 60, 3);
+        File file = File.createTempFile("life", ".ckpt");
+        file.deleteOnExit();
+        for (Life.Type type : Life.Type.values()) {
+            Life sample = Life.fromRLE(soup, type, acorn.getW(), acorn.getH(), 200, 4, false);
+            sample.execute();
+            String[] golden = sample.getResult();
+
+            sample = Life.fromRLE(acorn, type, 200, 4, false);
+            sample.execute();
+            sample.reset(soup);
+            Assert.assertEquals(0, sample.getTime());
+            sample.execute();
+            Assert.assertArrayEquals(type.toString(), golden, sample.getResult());
+
+            try {
+                sample.reset(new int[64]);
+                Assert.fail("reset to a state of another size");
+            }
+            catch (IllegalArgumentException expected) {
+            }
+
+            // Nothing of a checkpointed run that a cycle cut short is left
+            sample = Life.fromRLE(other, type, 400, 4, false);
+            sample.execute();
+            golden = sample.getResult();
+            Life.checkpointFile = file.getPath();
+            Life.checkpointInterval = 50;
+            Life.periodWindow = 16;
+            try {
+                sample = Life.fromRLE(cycling, type, 400, 4, false);
+                sample.execute();
+            }
+            finally {
+                Life.checkpointFile = null;
+                Life.checkpointInterval = 1000;
+                Life.periodWindow = 0;
+            }
+            sample.reset(other);
+            Assert.assertEquals(type.toString(), 0, sample.getPeriod());
+            Assert.assertEquals(type.toString(), 0, sample.getStableTime());
+            Assert.assertEquals(type.toString(), 0, sample.getComputed());
+            sample.execute();
+            Assert.assertEquals(type.toString(), 400, sample.getTime());
+            Assert.assertEquals(type.toString(), 400, sample.getComputed());
+            Assert.assertArrayEquals(type.toString(), golden, sample.getResult());
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testParallelInit() {
+        // Grids wired by several threads run like those wired by one
+        RLE soup = RLE.getRandom(300, 300, 11);
+        Life.Type[] types = { Life.Type.NOSYNC, Life.Type.NOWAIT, Life.Type.ORDINARY, Life.Type.ORDINARY_OFFHEAP };
+        for (Life.Type type : types) {
+            Life sample = Life.fromRLE(soup, type, 50, 1, false);
+            sample.execute();
+            Checkpoint golden = sample.getSnapshot();
+
+            sample = Life.fromRLE(soup, type, 50, 8, false);
+            sample.execute();
+            Assert.assertEquals(type.toString(), golden, sample.getSnapshot());
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testCensus() {
+        // Tallies of threads add up to what a scan of the result finds
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, 200, 1, false);
+        sample.execute();
+        String[] result = sample.getResult();
+        long population = 0;
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        int minCol = Integer.MAX_VALUE;
+        int maxCol = Integer.MIN_VALUE;
+        for (int r = 0; r < result.length; ++r) {
+            for (int c = 0; c < result[r].length(); ++c) {
+                if (result[r].charAt(c) == '1') {
+                    ++population;
+                    minRow = Math.min(minRow, r);
+                    maxRow = Math.max(maxRow, r);
+                    minCol = Math.min(minCol, c);
+                    maxCol = Math.max(maxCol, c);
+                }
+            }
+        }
+
+        for (Life.Type type : Life.Type.values()) {
+            sample = Life.fromRLE(acorn, type, 200, 4, false);
+            sample.execute();
+            Census census = sample.getCensus();
+            Assert.assertEquals(type.toString(), 200, census.getTime());
+            Assert.assertEquals(type.toString(), population, census.getPopulation());
+            Assert.assertEquals(type.toString(), minRow, census.getMinRow());
+            Assert.assertEquals(type.toString(), maxRow, census.getMaxRow());
+            Assert.assertEquals(type.toString(), minCol, census.getMinCol());
+            Assert.assertEquals(type.toString(), maxCol, census.getMaxCol());
+        }
+    }
+
+    @Test(timeout = 300000)
+    public void testCycles() {
+        // A soup that is all still lifes and blinkers on a torus from generation 317 on
+        RLE soup = RLE.getRandom(60, 60, 2);
+        for (Life.Type type : Life.Type.values()) {
+            Life sample = Life.fromRLE(soup, type, 2001, 4, false);
+            sample.execute();
+            String[] golden = sample.getResult();
+            sample.advance(1);
+            String[] next = sample.getResult();
+
+            Life.periodWindow = 16;
+            try {
+                sample = Life.fromRLE(soup, type, 2001, 4, false);
+                for (int run = 0; run < 2; ++run) {
+                    // Starting over runs up to 2001 again and finds the same cycle
+                    if (run > 0) {
+                        sample.reset(soup);
+                    }
+                    sample.execute();
+                    Assert.assertEquals(type.toString(), 2001, sample.getTime());
+                    Assert.assertArrayEquals(type.toString(), golden, sample.getResult());
+                    if (type == Life.Type.UNBOUNDED) {
+                        // Gliders fly off into the plane
+                        Assert.assertEquals(type.toString(), 0, sample.getPeriod());
+                        Assert.assertEquals(type.toString(), 2001, sample.getComputed());
+                    }
+                    else {
+                        Assert.assertEquals(type.toString(), 2, sample.getPeriod());
+                        Assert.assertEquals(type.toString(), 317, sample.getStableTime());
+                        Assert.assertTrue(type.toString(), sample.getComputed() < 1000);
+                    }
+                }
+                sample.advance(1);
+                Assert.assertArrayEquals(type.toString(), next, sample.getResult());
+            }
+            finally {
+                Life.periodWindow = 0;
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testResult() throws Exception {
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, 500, 4, false);
+        sample.execute();
+        String[] result = sample.getResult();
+        Checkpoint golden = sample.getSnapshot();
+        Assert.assertEquals(500, golden.getTime());
+        Assert.assertArrayEquals(toState(result), golden.getState());
+        long population = 0;
+        for (int s : golden.getState()) {
+            population += s;
+        }
+        Assert.assertEquals(population, golden.getPopulation());
+
+        sample = Life.fromRLE(acorn, Life.Type.BITWISE, 500, 4, false);
+        sample.execute();
+        Checkpoint snapshot = sample.getSnapshot();
+        Assert.assertEquals(golden, snapshot);
+        Assert.assertEquals(golden.getHash(), snapshot.getHash());
+
+        // Export and read back
+        File file = File.createTempFile("life", ".rle");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            RLE.write(sample, out);
+        }
+        RLE rle = RLE.fromFile(file.getPath());
+        Assert.assertEquals(acorn.getW(), rle.getW());
+        Assert.assertEquals(acorn.getH(), rle.getH());
+        Assert.assertArrayEquals(toState(result), rle.getState());
+    }
+
+    @Test(timeout = 60000)
+    public void testStats() {
+        RLE acorn = RLE.getAcorn();
+        NoSyncLife sample = (NoSyncLife)Life.fromRLE(acorn, Life.Type.NOSYNC, 200, 4, false);
+        sample.execute();
+        NoSyncLife.Stats stats = sample.getStats();
+
+        // Every cell is computed at least once per generation, and checked once at the end
+        long cells = (long)acorn.getW() * acorn.getH();
+        Assert.assertTrue(stats.getUpdates() + stats.getRecomputes() >= 200 * cells);
+        Assert.assertTrue(stats.getScans() >= cells);
+
+        // Checking for completion does not grow with threads
+        sample = (NoSyncLife)Life.fromRLE(acorn, Life.Type.NOSYNC, 200, 64, false);
+        sample.execute();
+        Assert.assertTrue(sample.getStats().getScans() < 4 * cells);
+    }
+
+    @Test(timeout = 60000)
+    public void testStatsNames() {
+        RLE acorn = RLE.getAcorn();
+        NoSyncLife one = (NoSyncLife)Life.fromRLE(acorn, Life.Type.NOSYNC, 200, 1, false);
+        NoSyncLife two = (NoSyncLife)Life.fromRLE(acorn, Life.Type.NOSYNC, 200, 1, false);
+
+        // Engines running side by side publish their counters under names of their own
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName first = one.register();
+        ObjectName second = two.register();
+        try {
+            Assert.assertTrue(!first.equals(second));
+            Assert.assertTrue(server.isRegistered(first));
+            Assert.assertTrue(server.isRegistered(second));
+        }
+        finally {
+            one.unregister(first);
+            two.unregister(second);
+        }
+        Assert.assertTrue(!server.isRegistered(first));
+    }
+
+    @Test(timeout = 120000)
+    public void testAffinity() {
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, 300, 1, false);
+        sample.execute();
+        Checkpoint golden = sample.getSnapshot();
+
+        Life.affinity = true;
+        try {
+            NoSyncLife affine = (NoSyncLife)Life.fromRLE(acorn, Life.Type.NOSYNC, 300, 4, false);
+            affine.execute();
+            Assert.assertEquals(golden, affine.getSnapshot());
+
+            // Threads mostly stay in their own stripes
+            NoSyncLife.Stats stats = affine.getStats();
+            Assert.assertTrue(stats.getAwayUpdates() < stats.getUpdates() / 10);
+        }
+        finally {
+            Life.affinity = false;
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testFrames() throws Exception {
+        File dir = Files.createTempDirectory("frames").toFile();
+        Life.frameDir = dir.getPath();
+        try {
+            RLE acorn = RLE.getAcorn();
+            Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, 500, 4, false);
+            sample.execute();
+
+            // The last frame is the final state
+            File[] frames = dir.listFiles();
+            Arrays.sort(frames);
+            Assert.assertTrue(frames.length > 0);
+            BufferedImage img = ImageIO.read(frames[frames.length - 1]);
+            Checkpoint golden = sample.getSnapshot();
+            for (int y = 0; y < acorn.getH(); ++y) {
+                for (int x = 0; x < acorn.getW(); ++x) {
+                    Assert.assertEquals(golden.getState(x, y), (img.getRGB(x, y) & 0xffffff) == 0 ? 0 : 1);
+                }
+            }
+            for (File frame : frames) {
+                frame.delete();
+            }
+        }
+        finally {
+            Life.frameDir = null;
+            dir.delete();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testTileSizes() {
+        // Test tiles from single cells to the widest that fit a word
+        RLE acorn = RLE.getAcorn();
+        Life sample = Life.fromRLE(acorn, Life.Type.NOSYNC, 300, 1, false);
+        sample.execute();
+        String[] golden = sample.getResult();
+
+        for (int size : new int[] { 1, 7, 8, 50, TiledNoSyncLife.MAX_TILE }) {
+            sample = new TiledNoSyncLife(acorn.getW(), acorn.getH(), 300, 8, false, acorn.getState(), size);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+
+            sample = new BlockNoWaitLife(acorn.getW(), acorn.getH(), 300, 8, false, acorn.getState(), size);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+
+            sample = new ChannelLife(acorn.getW(), acorn.getH(), 300, 8, false, acorn.getState(), size);
+            sample.execute();
+            Assert.assertArrayEquals(golden, sample.getResult());
+        }
+
+        // Platform threads share the tiles, however many there are
+        if (!ChannelLife.isVirtual()) {
+            for (int p : new int[] { 1, 2, 3 }) {
+                sample = new ChannelLife(acorn.getW(), acorn.getH(), 300, p, false, acorn.getState(), 4);
+                sample.execute();
+                Assert.assertArrayEquals(golden, sample.getResult());
+            }
+        }
+    }
+
     private void testInfinite(int generations, Life.Type type, int threads) {
         RLE acorn = RLE.getAcorn();
         System.out.print("Running " + type + " for " + generations +" generations with 1 thread");
@@ -90,7 +830,7 @@ public class LifeTest {
         sample.execute();
         long time1 = System.currentTimeMillis() - start;
         System.out.println(", base time: " + time1 + " ms");
-        String[] golden = sample.getResult();
+        Checkpoint golden = sample.getSnapshot();
 
         for (;;) {
             System.out.print("Running " + type + " for " + generations +" generations with " + threads + " threads");
@@ -99,7 +839,7 @@ public class LifeTest {
             sample.execute();
             long time = System.currentTimeMillis() - start;
 
-            Assert.assertArrayEquals(golden, sample.getResult());
+            Assert.assertEquals(golden, sample.getSnapshot());
 
             System.out.println(", time: " + time + " ms");
         }